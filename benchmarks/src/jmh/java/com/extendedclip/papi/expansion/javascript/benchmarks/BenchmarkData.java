@@ -0,0 +1,31 @@
+package com.extendedclip.papi.expansion.javascript.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stands in for the {@code Data} binding, kept in memory so disk access does not skew the numbers.
+ */
+public final class BenchmarkData {
+    private final Map<String, Object> data = new HashMap<>();
+
+    public boolean exists(final String key) {
+        return data.containsKey(key);
+    }
+
+    public Object get(final String key) {
+        return data.get(key);
+    }
+
+    public void set(final String key, final Object value) {
+        data.put(key, value);
+    }
+
+    public void remove(final String key) {
+        data.remove(key);
+    }
+
+    public void clear() {
+        data.clear();
+    }
+}
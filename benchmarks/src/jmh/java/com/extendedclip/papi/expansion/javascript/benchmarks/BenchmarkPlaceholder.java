@@ -0,0 +1,9 @@
+package com.extendedclip.papi.expansion.javascript.benchmarks;
+
+/**
+ * Stands in for the {@code Placeholder} binding.
+ */
+public final class BenchmarkPlaceholder {
+    public void saveData() {
+    }
+}
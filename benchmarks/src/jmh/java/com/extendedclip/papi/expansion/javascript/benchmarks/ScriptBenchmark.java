@@ -0,0 +1,125 @@
+package com.extendedclip.papi.expansion.javascript.benchmarks;
+
+import com.extendedclip.papi.expansion.javascript.evaluator.JavetScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.evaluator.NashornScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.evaluator.PreparedScript;
+import com.extendedclip.papi.expansion.javascript.evaluator.QuickJsScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluator;
+import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the bundled scripts the way a placeholder request does: lease an evaluator, execute the
+ * prepared script with per-request bindings, and give the evaluator back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptBenchmark {
+    private static final String SCRIPTS_PROPERTY = "javascript.benchmarks.scripts";
+    private static final String PLAYER_NAME = "Notch";
+
+    @Param({"nashorn", "quickjs", "v8"})
+    public String engine;
+
+    @Param({"cooldown", "animated_text", "random_integer_between"})
+    public String script;
+
+    private ScriptEvaluatorFactory factory;
+    private PreparedScript preparedScript;
+    private Map<String, Object> staticBindings;
+    private Map<String, Object> bindings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        factory = createFactory(engine);
+
+        // Inner placeholders are resolved by PlaceholderAPI before a script runs
+        final String source = Files.readString(scriptPath(script)).replace("%player_name%", PLAYER_NAME);
+        preparedScript = factory.prepare(source);
+
+        final Map<String, Object> statics = new HashMap<>();
+        statics.put("Data", new BenchmarkData());
+        statics.put("Placeholder", new BenchmarkPlaceholder());
+        staticBindings = Collections.unmodifiableMap(statics);
+
+        bindings = new HashMap<>();
+        bindings.put("args", arguments(script));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        preparedScript.close();
+        if (factory instanceof Closeable closeable) {
+            closeable.close();
+        } else {
+            factory.cleanBinaries();
+        }
+    }
+
+    @Benchmark
+    public Object evaluate() throws Exception {
+        final ScriptEvaluator evaluator = factory.create(staticBindings);
+        try {
+            return evaluator.execute(bindings, preparedScript);
+        } finally {
+            if (evaluator instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static ScriptEvaluatorFactory createFactory(final String engine) throws Exception {
+        switch (engine) {
+            case "nashorn":
+                return NashornScriptEvaluatorFactory.create();
+            case "quickjs":
+                return QuickJsScriptEvaluatorFactory.create();
+            case "v8":
+                return JavetScriptEvaluatorFactory.create(false, 1);
+            default:
+                throw new IllegalArgumentException("Unknown engine name: " + engine);
+        }
+    }
+
+    private static Path scriptPath(final String script) {
+        final String directory = System.getProperty(SCRIPTS_PROPERTY, "scripts");
+        return Paths.get(directory).resolve(script + ".js");
+    }
+
+    private static String[] arguments(final String script) {
+        switch (script) {
+            case "cooldown":
+                return new String[]{"benchmark_60"};
+            case "random_integer_between":
+                return new String[]{"1", "100"};
+            default:
+                return new String[0];
+        }
+    }
+}
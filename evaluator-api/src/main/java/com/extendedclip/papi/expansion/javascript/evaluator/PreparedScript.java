@@ -0,0 +1,38 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import java.io.Closeable;
+
+public interface PreparedScript extends Closeable {
+    String getSource();
+
+    /**
+     * @return the function called on every evaluation, or null if the whole script is evaluated instead
+     */
+    default String getEntryFunction() {
+        return null;
+    }
+
+    /**
+     * Wraps the source so that evaluating it runs the top level once and returns the entry function.
+     * Top-level declarations stay private to the script, even when a runtime is shared with others.
+     */
+    default String getModuleSource() {
+        return "(function() {\n" + getSource() + "\n;return " + getEntryFunction() + ";\n})()";
+    }
+
+    /**
+     * @return the engine's compiled form of this script, to be persisted, or null if there is none yet
+     */
+    default byte[] getCodeCache() {
+        return null;
+    }
+
+    /**
+     * Feeds back a compiled form persisted by an earlier run. Must be called before the script first runs,
+     * engines check the data themselves and compile from source if they reject it.
+     */
+    default void setCodeCache(final byte[] data) {}
+
+    @Override
+    default void close() {}
+}
@@ -0,0 +1,184 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs evaluations on a fixed set of worker threads, each holding its own {@link ScriptEvaluatorFactory#pin()
+ * pinned} runtime for its whole life, so runtimes never move between threads and workers never wait on
+ * each other for one.
+ * <p>
+ * A task goes to the worker its key hashes to, which keeps a script's compiled code warm in one runtime.
+ * If that worker is busy, the task goes to the worker with the fewest pending tasks instead. Callers get a
+ * future and are never made to wait for a worker, a caller that stops waiting cancels it and the task is
+ * skipped if it has not started yet.
+ * <p>
+ * Only V8 pins a runtime of its own to each worker. QuickJS contexts already stay with the thread that
+ * created them, other engines run on their usual pools.
+ */
+public final class ScriptEvaluationExecutor implements Closeable {
+    private static final Runnable STOP = () -> {};
+
+    private final ScriptEvaluatorFactory evaluatorFactory;
+    private final Worker[] workers;
+    // Held while checking for close and queueing, so nothing is queued behind a worker's stop signal
+    private final Object submitLock = new Object();
+    private boolean closed;
+
+    /**
+     * @param threads the number of workers, each one holds a runtime of its own
+     */
+    public ScriptEvaluationExecutor(final ScriptEvaluatorFactory evaluatorFactory, final int threads) {
+        this.evaluatorFactory = evaluatorFactory;
+        this.workers = new Worker[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker("javascript-evaluator-" + (i + 1));
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Queues a task that gets the calling worker's pinned factory to create its evaluator with.
+     *
+     * @param key tasks with equal keys prefer the same worker, null is treated like any other key
+     * @throws RejectedExecutionException if the executor has been closed
+     */
+    public <T> CompletableFuture<T> submit(final Object key, final Function<ScriptEvaluatorFactory, T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (submitLock) {
+            if (closed) {
+                throw new RejectedExecutionException("Evaluation executor has been closed");
+            }
+            final Worker worker = selectWorker(key);
+            worker.pending.incrementAndGet();
+            worker.queue.add(() -> {
+                try {
+                    if (!future.isDone()) {
+                        future.complete(task.apply(worker.getFactory()));
+                    }
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                } finally {
+                    worker.pending.decrementAndGet();
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * @return true if called from one of the workers, which must not wait on tasks of their own
+     */
+    public boolean isWorkerThread() {
+        final Thread thread = Thread.currentThread();
+        for (Worker worker : workers) {
+            if (worker.thread == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     * @return tasks queued or running on any worker
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (Worker worker : workers) {
+            pending += worker.pending.get();
+        }
+        return pending;
+    }
+
+    private Worker selectWorker(final Object key) {
+        Worker selected = workers[Math.floorMod(Objects.hashCode(key), workers.length)];
+        if (selected.pending.get() == 0) {
+            return selected;
+        }
+        for (Worker worker : workers) {
+            if (worker.pending.get() < selected.pending.get()) {
+                selected = worker;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Lets the workers finish their queued tasks, waiting a few seconds at most. Each worker releases its
+     * runtime once it has stopped, a worker still running a script does so when that script ends.
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Worker worker : workers) {
+                worker.queue.add(STOP);
+            }
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private final class Worker {
+        private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Thread thread;
+        private ScriptEvaluatorFactory factory;
+
+        private Worker(final String name) {
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Only called on the worker thread, which is the only one to ever use the pinned factory.
+         */
+        private ScriptEvaluatorFactory getFactory() {
+            if (factory == null) {
+                factory = evaluatorFactory.pin();
+            }
+            return factory;
+        }
+
+        private void run() {
+            try {
+                Runnable task;
+                // Every task accepted before closing is queued ahead of the stop signal
+                while ((task = queue.take()) != STOP) {
+                    task.run();
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (factory != evaluatorFactory && factory instanceof Closeable closeable) {
+                    try {
+                        closeable.close();
+                    } catch (Exception ignored) {
+                        // The runtime is gone with the thread either way
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,66 @@
 package com.extendedclip.papi.expansion.javascript.evaluator;
 
 import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 
 public interface ScriptEvaluator {
+    String ENTRY_ARGUMENTS_BINDING = "__entryArguments";
+
     Object execute(final Map<String, Object> additionalBindings, final String script) throws EvaluatorException, ScriptException;
+
+    default Object execute(final Map<String, Object> additionalBindings, final PreparedScript script) throws EvaluatorException, ScriptException {
+        return execute(additionalBindings, script.getSource());
+    }
+
+    /**
+     * Executes the script and returns its result as the given type. Unlike the untyped variants, which
+     * hand back the text of anything that is not a primitive, engines that support it convert arrays to
+     * {@link List}s, objects to {@link Map}s and typed arrays to {@link java.nio.ByteBuffer}s, so
+     * structured results need no JSON round trip.
+     *
+     * @throws EvaluatorException if the result can't be converted to the given type
+     */
+    default <T> T execute(final Map<String, Object> additionalBindings, final PreparedScript script, final Class<T> resultType) throws EvaluatorException, ScriptException {
+        return ScriptResults.cast(execute(additionalBindings, script), resultType);
+    }
+
+    /**
+     * Executes the script once for every binding set, all on this evaluator, so engines with pooled
+     * runtimes lease one runtime for the whole batch. A failed run leaves null in its slot and is
+     * passed to the failure handler together with its index.
+     */
+    default List<Object> executeAll(final List<Map<String, Object>> additionalBindings, final PreparedScript script, final ObjIntConsumer<Exception> failureHandler) {
+        final List<Object> results = new ArrayList<>(additionalBindings.size());
+        for (int i = 0; i < additionalBindings.size(); i++) {
+            try {
+                results.add(execute(additionalBindings.get(i), script));
+            } catch (RuntimeException | ScriptException exception) {
+                results.add(null);
+                failureHandler.accept(exception, i);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Calls the entry function of the given script with the given arguments. Engines that keep runtimes
+     * alive evaluate the top level once per runtime, so state set up there survives between calls;
+     * this fallback evaluates it every time.
+     */
+    default Object invoke(final Map<String, Object> additionalBindings, final PreparedScript script, final Object... arguments) throws EvaluatorException, ScriptException {
+        final Map<String, Object> bindings = new HashMap<>(additionalBindings);
+        bindings.put(ENTRY_ARGUMENTS_BINDING, arguments);
+        return execute(bindings, script.getModuleSource() + ".apply(null, " + ENTRY_ARGUMENTS_BINDING + ")");
+    }
+
+    /**
+     * Asks the engine to stop the evaluation this evaluator is currently running. May be called from
+     * any thread; the interrupted call then fails with an exception. Engines that can't stop a running
+     * script ignore it.
+     */
+    default void interrupt() {}
 }
@@ -1,10 +1,56 @@
 package com.extendedclip.papi.expansion.javascript.evaluator;
 
+import java.util.Collection;
 import java.util.Map;
 
 public interface ScriptEvaluatorFactory {
 
+    /**
+     * Creates an evaluator with the given static bindings. Callers should pass the same map instance
+     * every time, engines with long-lived runtimes then install it once instead of on every call.
+     */
     ScriptEvaluator create(final Map<String, Object> bindings);
 
+    /**
+     * Compiles the given source once so it can be executed repeatedly without being reparsed.
+     * Engines without a compile step simply keep the source around.
+     */
+    default PreparedScript prepare(final String source) {
+        return prepare(source, null);
+    }
+
+    /**
+     * Prepares a script for {@link ScriptEvaluator#invoke}, which calls the named function instead of
+     * evaluating the whole script. A null entry function behaves like {@link #prepare(String)}.
+     */
+    default PreparedScript prepare(final String source, final String entryFunction) {
+        return new SimplePreparedScript(source, entryFunction);
+    }
+
+    /**
+     * Called on every (re)load before any of the loaded scripts runs, with the shared library sources by
+     * file name and the prepared scripts. Libraries are evaluated once in every runtime or context, ahead
+     * of the scripts, so their top-level declarations are visible to all of them. Engines that can
+     * snapshot a runtime evaluate libraries and script top levels once and start every runtime from that.
+     */
+    default void preload(final Map<String, String> libraries, final Collection<PreparedScript> scripts) {}
+
+    /**
+     * @return the engine build that {@link PreparedScript#getCodeCache() code caches} belong to, or null if
+     * the engine has no code cache that can be persisted
+     */
+    default String getCodeCacheVersion() {
+        return null;
+    }
+
+    /**
+     * Returns a factory for a single thread that runs nothing but scripts, whose evaluators all use one
+     * runtime owned by that thread. A factory that is not this one is {@link java.io.Closeable}, closing it
+     * releases the runtime. Engines whose runtimes already stay with their thread return this factory.
+     */
+    default ScriptEvaluatorFactory pin() {
+        return this;
+    }
+
     default void cleanBinaries() {}
 }
@@ -0,0 +1,53 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import java.util.Map;
+
+/**
+ * Casts script results to the type a caller asked for, widening or narrowing numbers since engines
+ * differ in which number type they return.
+ */
+public final class ScriptResults {
+    private static final Map<Class<?>, Class<?>> WRAPPERS = Map.of(
+            boolean.class, Boolean.class,
+            byte.class, Byte.class,
+            short.class, Short.class,
+            int.class, Integer.class,
+            long.class, Long.class,
+            float.class, Float.class,
+            double.class, Double.class,
+            char.class, Character.class
+    );
+
+    private ScriptResults() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T cast(final Object value, final Class<T> type) throws EvaluatorException {
+        if (value == null) {
+            return null;
+        }
+        final Class<T> target = (Class<T>) WRAPPERS.getOrDefault(type, type);
+        if (target.isInstance(value)) {
+            return target.cast(value);
+        }
+        if (target == String.class) {
+            return target.cast(value.toString());
+        }
+        if (value instanceof Number number) {
+            if (target == Integer.class) {
+                return target.cast(number.intValue());
+            } else if (target == Long.class) {
+                return target.cast(number.longValue());
+            } else if (target == Double.class) {
+                return target.cast(number.doubleValue());
+            } else if (target == Float.class) {
+                return target.cast(number.floatValue());
+            } else if (target == Short.class) {
+                return target.cast(number.shortValue());
+            } else if (target == Byte.class) {
+                return target.cast(number.byteValue());
+            }
+        }
+        throw new EvaluatorException("Expected a " + type.getSimpleName() + " result but the script returned a " + value.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,25 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+public final class SimplePreparedScript implements PreparedScript {
+    private final String source;
+    private final String entryFunction;
+
+    public SimplePreparedScript(final String source) {
+        this(source, null);
+    }
+
+    public SimplePreparedScript(final String source, final String entryFunction) {
+        this.source = source;
+        this.entryFunction = entryFunction;
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String getEntryFunction() {
+        return entryFunction;
+    }
+}
@@ -0,0 +1,28 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when an engine is taken from a pool. The event duration is the time spent waiting for it.
+ */
+@Name("javascript.EngineLease")
+@Label("Engine Lease")
+@Category({"PlaceholderAPI", "JavaScript"})
+@Description("An engine taken from the evaluator pool")
+final class EngineLeaseEvent extends jdk.jfr.Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Pool Size")
+    int poolSize;
+
+    @Label("Active Engines")
+    @Description("Engines in use after the lease")
+    int activeEngines;
+
+    @Label("Idle Engines")
+    int idleEngines;
+}
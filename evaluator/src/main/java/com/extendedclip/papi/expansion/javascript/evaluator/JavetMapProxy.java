@@ -0,0 +1,139 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.interop.proxy.IJavetDirectProxyHandler;
+import com.caoccao.javet.values.V8Value;
+import com.caoccao.javet.values.primitive.V8ValueBoolean;
+import com.caoccao.javet.values.primitive.V8ValueString;
+import com.caoccao.javet.values.reference.V8ValueArray;
+import com.caoccao.javet.values.reference.V8ValueObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes a map to V8 without copying it, so a script only pays for the keys it touches. Reads go
+ * straight to the map, writes only land in a scratch layer on top of it that {@link #reset()} drops,
+ * the same as writing to a copy of the map made for every call.
+ */
+final class JavetMapProxy implements IJavetDirectProxyHandler<Exception> {
+    private static final Object REMOVED = new Object();
+
+    private final Map<String, Object> map;
+    private final Map<String, Object> writes = new HashMap<>();
+    private V8Runtime v8Runtime;
+
+    JavetMapProxy(final Map<String, Object> map) {
+        this.map = map;
+    }
+
+    /**
+     * Drops everything the previous call wrote.
+     */
+    void reset() {
+        writes.clear();
+    }
+
+    @Override
+    public V8Runtime getV8Runtime() {
+        return v8Runtime;
+    }
+
+    @Override
+    public void setV8Runtime(final V8Runtime v8Runtime) {
+        this.v8Runtime = v8Runtime;
+    }
+
+    @Override
+    public V8Value proxyGet(final V8Value target, final V8Value property, final V8Value receiver) throws JavetException, Exception {
+        if (property instanceof V8ValueString key && containsKey(key.getValue())) {
+            return v8Runtime.toV8Value(get(key.getValue()));
+        }
+        return IJavetDirectProxyHandler.super.proxyGet(target, property, receiver);
+    }
+
+    @Override
+    public V8ValueBoolean proxySet(final V8Value target, final V8Value property, final V8Value value, final V8Value receiver) throws JavetException, Exception {
+        if (property instanceof V8ValueString key) {
+            writes.put(key.getValue(), v8Runtime.toObject(value));
+            return v8Runtime.createV8ValueBoolean(true);
+        }
+        return IJavetDirectProxyHandler.super.proxySet(target, property, value, receiver);
+    }
+
+    @Override
+    public V8ValueBoolean proxyHas(final V8Value target, final V8Value property) throws JavetException, Exception {
+        if (property instanceof V8ValueString key && containsKey(key.getValue())) {
+            return v8Runtime.createV8ValueBoolean(true);
+        }
+        return IJavetDirectProxyHandler.super.proxyHas(target, property);
+    }
+
+    @Override
+    public V8ValueBoolean proxyDeleteProperty(final V8Value target, final V8Value property) throws JavetException, Exception {
+        if (property instanceof V8ValueString key) {
+            writes.put(key.getValue(), REMOVED);
+            return v8Runtime.createV8ValueBoolean(true);
+        }
+        return IJavetDirectProxyHandler.super.proxyDeleteProperty(target, property);
+    }
+
+    @Override
+    public V8Value proxyGetOwnPropertyDescriptor(final V8Value target, final V8Value property) throws JavetException, Exception {
+        if (property instanceof V8ValueString key && containsKey(key.getValue())) {
+            final V8ValueObject descriptor = v8Runtime.createV8ValueObject();
+            try (V8Value value = v8Runtime.toV8Value(get(key.getValue()))) {
+                descriptor.set("value", value);
+            }
+            descriptor.set("writable", true);
+            descriptor.set("enumerable", true);
+            descriptor.set("configurable", true);
+            return descriptor;
+        }
+        return IJavetDirectProxyHandler.super.proxyGetOwnPropertyDescriptor(target, property);
+    }
+
+    @Override
+    public V8Value toJSON(final V8Value... values) throws JavetException {
+        return v8Runtime.toV8Value(snapshot());
+    }
+
+    @Override
+    public V8ValueArray proxyOwnKeys(final V8Value target) throws JavetException, Exception {
+        final V8ValueArray keys = v8Runtime.createV8ValueArray();
+        int index = 0;
+        for (String key : snapshot().keySet()) {
+            keys.set(index++, key);
+        }
+        return keys;
+    }
+
+    private boolean containsKey(final String key) {
+        final Object written = writes.get(key);
+        if (written != null) {
+            return written != REMOVED;
+        }
+        return writes.containsKey(key) || map.containsKey(key);
+    }
+
+    private Object get(final String key) {
+        return writes.containsKey(key) ? writes.get(key) : map.get(key);
+    }
+
+    private Map<String, Object> snapshot() {
+        if (writes.isEmpty()) {
+            return map;
+        }
+        final Map<String, Object> merged = new LinkedHashMap<>(map);
+        for (Map.Entry<String, Object> write : writes.entrySet()) {
+            if (write.getValue() == REMOVED) {
+                merged.remove(write.getKey());
+            } else {
+                merged.put(write.getKey(), write.getValue());
+            }
+        }
+        return merged;
+    }
+}
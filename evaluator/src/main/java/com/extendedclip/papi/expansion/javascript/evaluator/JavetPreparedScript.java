@@ -0,0 +1,158 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.values.V8Value;
+import com.caoccao.javet.values.reference.V8Script;
+import com.caoccao.javet.values.reference.V8ValueFunction;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+public final class JavetPreparedScript implements PreparedScript {
+    // V8's code cache header: magic number, V8 version, source and flag hashes
+    private static final int CACHE_HEADER_LENGTH = 16;
+
+    private final String source;
+    private final String entryFunction;
+    private final Map<V8Runtime, V8Script> compiledScripts = new ConcurrentHashMap<>();
+    private final Map<V8Runtime, V8ValueFunction> entryFunctions = new ConcurrentHashMap<>();
+    private volatile byte[] cachedData;
+    private volatile boolean cachedDataVerified;
+    private volatile boolean closed = false;
+
+    public JavetPreparedScript(final String source) {
+        this(source, null);
+    }
+
+    public JavetPreparedScript(final String source, final String entryFunction) {
+        this.source = source;
+        this.entryFunction = entryFunction;
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String getEntryFunction() {
+        return entryFunction;
+    }
+
+    /**
+     * Returns the script compiled for the given runtime. Compiled scripts are bound to the runtime
+     * that produced them, so each pooled runtime compiles once; every compilation after the first
+     * one is fed with V8's code cache to skip parsing.
+     * <p>
+     * Javet does not tell whether V8 rejected the cache, but the cache of a script compiled from it carries
+     * the header V8 compiled with. If that differs from the given one, the data is replaced with the new
+     * cache, which is written back on the next save.
+     */
+    V8Script compile(final V8Runtime v8Runtime) throws JavetException {
+        V8Script v8Script = compiledScripts.get(v8Runtime);
+        if (v8Script != null && !v8Script.isClosed()) {
+            return v8Script;
+        }
+
+        compiledScripts.keySet().removeIf(V8Runtime::isClosed);
+
+        final String compiledSource = entryFunction == null ? source : getModuleSource();
+        final byte[] data = cachedData;
+        v8Script = (data == null ? v8Runtime.getExecutor(compiledSource) : v8Runtime.getExecutor(compiledSource, data)).compileV8Script();
+        if (data == null) {
+            cachedData = v8Script.getCachedData();
+            cachedDataVerified = true;
+        } else if (!cachedDataVerified) {
+            final byte[] compiledData = v8Script.getCachedData();
+            if (!hasSameHeader(data, compiledData)) {
+                LOGGER.debug("V8 rejected the code cache of a script, replacing it");
+                cachedData = compiledData;
+            }
+            cachedDataVerified = true;
+        }
+
+        if (!closed) {
+            compiledScripts.put(v8Runtime, v8Script);
+        }
+        return v8Script;
+    }
+
+    /**
+     * Returns the entry function for the given runtime, running the script's top level the first time
+     * unless the runtime was created from a snapshot that already ran it.
+     */
+    V8ValueFunction getEntryFunction(final V8Runtime v8Runtime) throws JavetException {
+        V8ValueFunction function = entryFunctions.get(v8Runtime);
+        if (function != null && !function.isClosed()) {
+            return function;
+        }
+
+        entryFunctions.keySet().removeIf(V8Runtime::isClosed);
+
+        function = JavetSnapshot.findEntryFunction(v8Runtime, getModuleSource());
+        if (function == null) {
+            final V8Value value = compile(v8Runtime).execute();
+            if (!(value instanceof V8ValueFunction)) {
+                value.close();
+                throw new EvaluatorException("Entry function '" + entryFunction + "' is not defined");
+            }
+            function = (V8ValueFunction) value;
+        }
+
+        if (!closed) {
+            entryFunctions.put(v8Runtime, function);
+        }
+        return function;
+    }
+
+    @Override
+    public byte[] getCodeCache() {
+        return cachedData;
+    }
+
+    @Override
+    public void setCodeCache(final byte[] data) {
+        if (cachedData == null) {
+            cachedData = data;
+            cachedDataVerified = false;
+        }
+    }
+
+    private static boolean hasSameHeader(final byte[] data, final byte[] compiledData) {
+        if (data.length < CACHE_HEADER_LENGTH || compiledData == null || compiledData.length < CACHE_HEADER_LENGTH) {
+            return false;
+        }
+        return Arrays.equals(data, 0, CACHE_HEADER_LENGTH, compiledData, 0, CACHE_HEADER_LENGTH);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        for (V8ValueFunction function : entryFunctions.values()) {
+            try {
+                if (!function.isClosed()) {
+                    function.close();
+                }
+            } catch (JavetException e) {
+                LOGGER.warn("Failed to release entry function. " + e);
+            }
+        }
+        entryFunctions.clear();
+
+        for (V8Script v8Script : compiledScripts.values()) {
+            try {
+                if (!v8Script.isClosed()) {
+                    v8Script.close();
+                }
+            } catch (JavetException e) {
+                LOGGER.warn("Failed to release compiled script. " + e);
+            }
+        }
+        compiledScripts.clear();
+    }
+}
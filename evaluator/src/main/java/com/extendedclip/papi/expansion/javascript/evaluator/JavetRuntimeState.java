@@ -0,0 +1,209 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.values.V8Value;
+import com.caoccao.javet.values.reference.V8ValueObject;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * What scripts installed in one runtime: the static bindings per script, the libraries evaluated so far,
+ * and the handles every call reuses. It lives next to the runtime, on its pooled engine or pinned factory,
+ * and is only used by the thread leasing that runtime.
+ * <p>
+ * Resetting the runtime context wipes the installed globals, so the state must be {@link #reset()} with it.
+ */
+final class JavetRuntimeState {
+    // Once more scripts than this went through a runtime, the least recently used one is dropped
+    private static final int MAX_SCRIPT_BINDINGS = 512;
+
+    private final V8Runtime v8Runtime;
+    private final JavetValueArena arena = new JavetValueArena();
+    private final Map<Map<String, ?>, ScriptBindings> scripts = new IdentityHashMap<>();
+    private final Set<String> installedLibraries = new HashSet<>();
+    private final Set<String> failedLibraries = new HashSet<>();
+    private Map<String, String> libraries = Collections.emptyMap();
+    private JavetValueConverter converter;
+    private V8ValueObject globalObject;
+    private ScriptBindings current;
+    private long clock;
+
+    JavetRuntimeState(final V8Runtime v8Runtime) {
+        this.v8Runtime = v8Runtime;
+    }
+
+    JavetValueArena getArena() {
+        return arena;
+    }
+
+    JavetValueConverter getConverter() {
+        if (converter == null) {
+            converter = new JavetValueConverter(v8Runtime, arena);
+        }
+        return converter;
+    }
+
+    V8ValueObject getGlobalObject() throws JavetException {
+        if (globalObject == null || globalObject.isClosed()) {
+            globalObject = v8Runtime.getGlobalObject();
+        }
+        return globalObject;
+    }
+
+    /**
+     * @return true if some of the given libraries have not been evaluated successfully in this runtime yet
+     */
+    boolean hasPendingLibraries(final Map<String, String> libraries) {
+        if (this.libraries != libraries) {
+            // A reload brought a new set, which is evaluated from the start
+            this.libraries = libraries;
+            installedLibraries.clear();
+            failedLibraries.clear();
+        }
+        return installedLibraries.size() < libraries.size();
+    }
+
+    boolean isLibraryInstalled(final String name) {
+        return installedLibraries.contains(name);
+    }
+
+    void markLibraryInstalled(final String name) {
+        installedLibraries.add(name);
+        failedLibraries.remove(name);
+    }
+
+    /**
+     * Failed libraries are tried again on the next call.
+     *
+     * @return true the first time the library failed in this runtime
+     */
+    boolean markLibraryFailed(final String name) {
+        return failedLibraries.add(name);
+    }
+
+    /**
+     * @return the installed bindings of the script owning the given map, or null if this runtime has none
+     */
+    ScriptBindings getScriptBindings(final Map<String, ?> bindings) {
+        final ScriptBindings scriptBindings = scripts.get(bindings);
+        if (scriptBindings == null) {
+            return null;
+        }
+        if (scriptBindings.isClosed()) {
+            // The context was reset without going through the engine
+            reset();
+            return null;
+        }
+        scriptBindings.lastUsed = ++clock;
+        return scriptBindings;
+    }
+
+    void putScriptBindings(final Map<String, ?> bindings, final ScriptBindings scriptBindings) {
+        if (scripts.size() >= MAX_SCRIPT_BINDINGS) {
+            evictLeastRecentlyUsed();
+        }
+        scriptBindings.lastUsed = ++clock;
+        scripts.put(bindings, scriptBindings);
+    }
+
+    /**
+     * Points the globals at the given script's bindings unless they already are.
+     */
+    void activate(final ScriptBindings scriptBindings) throws JavetException {
+        if (current != scriptBindings) {
+            scriptBindings.assignGlobals(getGlobalObject());
+            current = scriptBindings;
+        }
+    }
+
+    // Only runs once the runtime is full, a scan is cheaper than keeping an ordered map per lookup
+    private void evictLeastRecentlyUsed() {
+        Map.Entry<Map<String, ?>, ScriptBindings> eldest = null;
+        for (Map.Entry<Map<String, ?>, ScriptBindings> entry : scripts.entrySet()) {
+            if (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed) {
+                eldest = entry;
+            }
+        }
+        if (eldest == null) {
+            return;
+        }
+        final ScriptBindings evicted = scripts.remove(eldest.getKey());
+        if (current == evicted) {
+            current = null;
+        }
+        evicted.close();
+    }
+
+    /**
+     * Forgets everything installed, called whenever the runtime context is reset.
+     */
+    void reset() {
+        scripts.values().forEach(ScriptBindings::close);
+        scripts.clear();
+        current = null;
+        libraries = Collections.emptyMap();
+        installedLibraries.clear();
+        failedLibraries.clear();
+        if (converter != null) {
+            converter.close();
+            converter = null;
+        }
+        if (globalObject != null) {
+            close(globalObject);
+            globalObject = null;
+        }
+    }
+
+    private static void close(final V8Value value) {
+        try {
+            if (!value.isClosed()) {
+                value.close();
+            }
+        } catch (JavetException e) {
+            LOGGER.warn("Failed to release V8 value. " + e);
+        }
+    }
+
+    static final class ScriptBindings {
+        private final Set<String> names;
+        private final V8ValueObject holder;
+        private final List<JavetMapProxy> proxies;
+        private long lastUsed;
+
+        ScriptBindings(final Set<String> names, final V8ValueObject holder, final List<JavetMapProxy> proxies) {
+            this.names = names;
+            this.holder = holder;
+            this.proxies = proxies;
+        }
+
+        private void assignGlobals(final V8ValueObject globalObject) throws JavetException {
+            for (String name : names) {
+                try (V8Value value = holder.get(name)) {
+                    globalObject.set(name, value);
+                }
+            }
+        }
+
+        void resetProxies() {
+            for (JavetMapProxy proxy : proxies) {
+                proxy.reset();
+            }
+        }
+
+        private boolean isClosed() {
+            return holder.isClosed();
+        }
+
+        private void close() {
+            JavetRuntimeState.close(holder);
+        }
+    }
+}
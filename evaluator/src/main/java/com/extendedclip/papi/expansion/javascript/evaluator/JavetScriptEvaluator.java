@@ -2,58 +2,58 @@ package com.extendedclip.papi.expansion.javascript.evaluator;
 
 import com.caoccao.javet.exceptions.JavetException;
 import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.interop.converters.JavetProxyConverter;
 import com.caoccao.javet.values.V8Value;
 import com.caoccao.javet.values.primitive.*;
+import com.caoccao.javet.values.reference.IV8ValueArray;
 import com.caoccao.javet.values.reference.V8ValueArray;
+import com.caoccao.javet.values.reference.V8ValueArrayBuffer;
+import com.caoccao.javet.values.reference.V8ValueFunction;
 import com.caoccao.javet.values.reference.V8ValueObject;
+import com.caoccao.javet.values.reference.V8ValueTypedArray;
 
+import javax.script.ScriptException;
 import java.io.Closeable;
 import java.io.IOException;
-import java.lang.reflect.Array;
-import java.net.URI;
-import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
 
 import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
 
 public class JavetScriptEvaluator implements ScriptEvaluator, Closeable {
-    private static final ThreadLocal<Set<V8Value>> THREAD_V8_VALUES = ThreadLocal.withInitial(HashSet::new);
-    private static final ConcurrentHashMap<V8Runtime, Set<V8Value>> RUNTIME_VALUES = new ConcurrentHashMap<>();
-    private static final int BATCH_CLOSE_THRESHOLD = 100;
-    private static final int PERSISTENCE_THRESHOLD = 5;
+    private static final JavetProxyConverter PROXY_CONVERTER = new JavetProxyConverter();
+    private static final Set<String> PROXIED_BINDINGS = Set.of("Data", "DataVar");
+    private static final int MAX_RESULT_DEPTH = 32;
     private final V8Runtime v8Runtime;
+    private final JavetRuntimeState state;
     private final Map<String, Object> bindings;
-    private final Set<V8Value> managedV8Values;
-    private final Map<V8Value, Integer> valueUsageCounter = new HashMap<>();
+    private final Map<String, String> libraries;
+    private final Object executionLock = new Object();
+    private boolean executing = false;
     private Consumer<JavetScriptEvaluator> runtimeReleaseHook;
     private boolean closed = false;
 
     public JavetScriptEvaluator(final V8Runtime v8Runtime, final Map<String, Object> bindings) {
-        this.v8Runtime = v8Runtime;
-        this.bindings = bindings != null ? new HashMap<>(bindings) : new HashMap<>();
-        this.managedV8Values = RUNTIME_VALUES.computeIfAbsent(v8Runtime, k -> Collections.newSetFromMap(new WeakHashMap<>()));
+        this(v8Runtime, bindings, Collections.emptyMap());
     }
 
-    public static void performGlobalCleanup() {
-        THREAD_V8_VALUES.remove();
-
-        RUNTIME_VALUES.entrySet().removeIf(entry -> {
-            V8Runtime runtime = entry.getKey();
-            return runtime == null || runtime.isClosed();
-        });
+    /**
+     * @param libraries shared library sources by name, evaluated once per runtime ahead of any script
+     */
+    public JavetScriptEvaluator(final V8Runtime v8Runtime, final Map<String, Object> bindings, final Map<String, String> libraries) {
+        this(v8Runtime, new JavetRuntimeState(v8Runtime), bindings, libraries);
     }
 
-    protected <T extends V8Value> T trackV8Value(T value) {
-        if (value != null) {
-            THREAD_V8_VALUES.get().add(value);
-            managedV8Values.add(value);
-
-            valueUsageCounter.merge(value, 1, Integer::sum);
-        }
-        return value;
+    /**
+     * @param state what the given runtime already has installed, kept by whoever owns the runtime
+     */
+    JavetScriptEvaluator(final V8Runtime v8Runtime, final JavetRuntimeState state, final Map<String, Object> bindings, final Map<String, String> libraries) {
+        this.v8Runtime = v8Runtime;
+        this.state = state;
+        // Kept by reference, the map identity tells which script these bindings belong to
+        this.bindings = bindings != null ? bindings : Collections.emptyMap();
+        this.libraries = libraries;
     }
 
     public void setRuntimeReleaseHook(Consumer<JavetScriptEvaluator> hook) {
@@ -63,237 +63,238 @@ public class JavetScriptEvaluator implements ScriptEvaluator, Closeable {
     @Override
     public Object execute(final Map<String, Object> additionalBindings, final String script)
             throws EvaluatorException {
-        if (closed) {
-            throw new EvaluatorException("Evaluator has been closed");
-        }
-
-        if (v8Runtime == null || v8Runtime.isClosed()) {
-            throw new EvaluatorException("JavaScript runtime is not available");
-        }
+        checkAvailable();
 
+        // Every value created for this call is closed once it returns
+        final JavetValueArena arena = state.getArena();
+        final int mark = arena.mark();
         try {
-            applyBindings(bindings);
-
-            if (additionalBindings != null && !additionalBindings.isEmpty()) {
-                applyBindings(additionalBindings);
-            }
+            installBindings();
+            applyBindings(additionalBindings);
 
-            Object result = v8Runtime.getExecutor(script).execute();
-
-            if (result != null) {
-                result = convertToJavaObject(result);
-                cleanupTemporaryValues();
-            }
-
-            return result;
+            return convertToJavaObject(runInterruptibly(() -> v8Runtime.getExecutor(script).execute()));
         } catch (JavetException e) {
             throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } catch (EvaluatorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Java calls made by the script and the value conversions throw their own exceptions
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } finally {
+            arena.release(mark);
         }
     }
 
-    private void cleanupTemporaryValues() {
-        Set<V8Value> threadValues = THREAD_V8_VALUES.get();
-
-        if (threadValues.size() < BATCH_CLOSE_THRESHOLD) {
-            return;
+    @Override
+    public Object execute(final Map<String, Object> additionalBindings, final PreparedScript script)
+            throws EvaluatorException {
+        if (!(script instanceof JavetPreparedScript preparedScript)) {
+            return execute(additionalBindings, script.getSource());
         }
 
-        List<V8Value> valuesToClose = new ArrayList<>(threadValues.size());
-        for (V8Value value : threadValues) {
-            if (value != null && !value.isClosed() &&
-                    (valueUsageCounter.getOrDefault(value, 0) < PERSISTENCE_THRESHOLD)) {
-                valuesToClose.add(value);
-            }
-        }
+        checkAvailable();
 
-        int closedCount = closeV8ValuesEfficiently(valuesToClose);
+        final JavetValueArena arena = state.getArena();
+        final int mark = arena.mark();
+        try {
+            installBindings();
+            applyBindings(additionalBindings);
 
-        if (closedCount > 0) {
-            valuesToClose.forEach(threadValues::remove);
+            return convertToJavaObject(runInterruptibly(() -> preparedScript.compile(v8Runtime).execute()));
+        } catch (JavetException e) {
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } catch (EvaluatorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } finally {
+            arena.release(mark);
         }
     }
 
-    private int closeV8ValuesEfficiently(List<V8Value> values) {
-        if (values == null || values.isEmpty()) {
-            return 0;
+    @Override
+    public <T> T execute(final Map<String, Object> additionalBindings, final PreparedScript script, final Class<T> resultType)
+            throws EvaluatorException, ScriptException {
+        if (!(script instanceof JavetPreparedScript preparedScript)) {
+            return ScriptEvaluator.super.execute(additionalBindings, script, resultType);
         }
 
-        int closedCount = 0;
-        Map<Class<?>, List<V8Value>> valuesByType = new HashMap<>();
-
-        for (V8Value value : values) {
-            if (value == null || value.isClosed()) continue;
+        checkAvailable();
 
-            valuesByType.computeIfAbsent(value.getClass(), k -> new ArrayList<>()).add(value);
-        }
-
-        for (List<V8Value> typeValues : valuesByType.values()) {
-            try {
-                for (V8Value value : typeValues) {
-                    value.close();
-                    closedCount++;
+        final JavetValueArena arena = state.getArena();
+        final int mark = arena.mark();
+        try {
+            installBindings();
+            applyBindings(additionalBindings);
 
-                    valueUsageCounter.remove(value);
-                }
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to close V8Value batch", e);
-            }
+            final V8Value result = arena.add(runInterruptibly(() -> preparedScript.compile(v8Runtime).execute()));
+            return ScriptResults.cast(convertToStructuredObject(result, 0), resultType);
+        } catch (JavetException e) {
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } catch (EvaluatorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } finally {
+            arena.release(mark);
         }
-
-        return closedCount;
     }
 
-    private void applyBindings(Map<String, Object> bindingsMap) throws JavetException {
-        if (bindingsMap == null || bindingsMap.isEmpty()) {
-            return;
+    @Override
+    public Object invoke(final Map<String, Object> additionalBindings, final PreparedScript script, final Object... arguments)
+            throws EvaluatorException, ScriptException {
+        if (!(script instanceof JavetPreparedScript preparedScript) || script.getEntryFunction() == null) {
+            return ScriptEvaluator.super.invoke(additionalBindings, script, arguments);
         }
 
-        V8ValueObject globalObject = trackV8Value(v8Runtime.getGlobalObject());
+        checkAvailable();
 
-        for (Map.Entry<String, Object> entry : bindingsMap.entrySet()) {
-            setJavaValueToV8Object(globalObject, entry.getKey(), entry.getValue());
-        }
-    }
-
-    private void setJavaValueToV8Object(V8ValueObject v8Object, String key, Object value) throws JavetException {
-        if (value == null) {
-            v8Object.setNull(key);
-            return;
-        }
+        final JavetValueArena arena = state.getArena();
+        final int mark = arena.mark();
+        try {
+            installBindings();
+            applyBindings(additionalBindings);
 
-        if (value instanceof Number number) {
-            setNumberValue(v8Object, key, number);
-        } else if (value instanceof Boolean || value instanceof String || value instanceof Character) {
-            v8Object.set(key, value);
-        } else if (value instanceof Map<?, ?> mapValue) {
-            setMapValue(v8Object, key, mapValue);
-        } else if (value instanceof List<?> listValue) {
-            setListValue(v8Object, key, listValue);
-        } else if (value instanceof Collection<?> collectionValue) {
-            setCollectionValue(v8Object, key, collectionValue);
-        } else if (value.getClass().isArray()) {
-            setArrayValue(v8Object, key, value);
-        } else if (value instanceof Date dateValue) {
-            setDateValue(v8Object, key, dateValue.getTime());
-        } else if (value instanceof Calendar calendarValue) {
-            setDateValue(v8Object, key, calendarValue.getTimeInMillis());
-        } else if (value instanceof Enum<?>) {
-            v8Object.set(key, value.toString());
-        } else if (value instanceof Pattern patternValue) {
-            setPatternValue(v8Object, key, patternValue);
-        } else if (value instanceof URL || value instanceof URI || value instanceof Class<?>) {
-            v8Object.set(key, value.toString());
-        } else if (value instanceof Optional<?> optionalValue) {
-            if (optionalValue.isPresent()) {
-                setJavaValueToV8Object(v8Object, key, optionalValue.get());
-            } else {
-                v8Object.setNull(key);
+            final JavetValueConverter converter = state.getConverter();
+            final V8Value[] values = new V8Value[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = converter.toV8Value(arguments[i]);
             }
-        } else {
-            v8Object.set(key, value.toString());
+            return convertToJavaObject(runInterruptibly(() -> preparedScript.getEntryFunction(v8Runtime).call(v8Runtime.createV8ValueUndefined(), values)));
+        } catch (JavetException e) {
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } catch (EvaluatorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new EvaluatorException("Script execution failed: " + e.getMessage(), e);
+        } finally {
+            arena.release(mark);
         }
     }
 
-    private void setNumberValue(V8ValueObject v8Object, String key, Number value) throws JavetException {
-        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
-            v8Object.set(key, value.intValue());
-        } else if (value instanceof Long) {
-            long longVal = value.longValue();
-            if (longVal <= Integer.MAX_VALUE && longVal >= Integer.MIN_VALUE) {
-                v8Object.set(key, (int) longVal);
-            } else {
-                v8Object.set(key, longVal);
+    /**
+     * Terminates the script this evaluator is running. Nothing happens if it is not running one,
+     * so a late call can't hit the next script that leases the same runtime.
+     */
+    @Override
+    public void interrupt() {
+        synchronized (executionLock) {
+            if (executing && v8Runtime.isInUse()) {
+                v8Runtime.terminateExecution();
             }
-        } else if (value instanceof Float || value instanceof Double) {
-            v8Object.set(key, value.doubleValue());
-        } else {
-            v8Object.set(key, value.doubleValue());
         }
     }
 
-    private void setMapValue(V8ValueObject v8Object, String key, Map<?, ?> mapValue) throws JavetException {
-        V8ValueObject mapObj = trackV8Value(v8Runtime.createV8ValueObject());
-        setMapToV8Object(mapObj, mapValue);
-        v8Object.set(key, mapObj);
-    }
-
-    private void setMapToV8Object(V8ValueObject v8Object, Map<?, ?> map) throws JavetException {
-        for (Map.Entry<?, ?> entry : map.entrySet()) {
-            String mapKey = String.valueOf(entry.getKey());
-            setJavaValueToV8Object(v8Object, mapKey, entry.getValue());
+    private <T> T runInterruptibly(final JavetSupplier<T> supplier) throws JavetException {
+        synchronized (executionLock) {
+            executing = true;
         }
-    }
-
-    private void setListValue(V8ValueObject v8Object, String key, List<?> listValue) throws JavetException {
-        V8ValueArray arrayObj = trackV8Value(v8Runtime.createV8ValueArray());
-        setListToV8Array(arrayObj, listValue);
-        v8Object.set(key, arrayObj);
-    }
-
-    private void setListToV8Array(V8ValueArray array, List<?> list) throws JavetException {
-        for (int i = 0; i < list.size(); i++) {
-            setArrayItem(array, i, list.get(i));
+        try {
+            return supplier.get();
+        } finally {
+            synchronized (executionLock) {
+                executing = false;
+            }
         }
     }
 
-    private void setCollectionValue(V8ValueObject v8Object, String key, Collection<?> collectionValue) throws JavetException {
-        V8ValueArray arrayObj = trackV8Value(v8Runtime.createV8ValueArray());
-        setCollectionToV8Array(arrayObj, collectionValue);
-        v8Object.set(key, arrayObj);
-    }
+    private void checkAvailable() throws EvaluatorException {
+        if (closed) {
+            throw new EvaluatorException("Evaluator has been closed");
+        }
 
-    private void setCollectionToV8Array(V8ValueArray array, Collection<?> collection) throws JavetException {
-        int i = 0;
-        for (Object item : collection) {
-            setArrayItem(array, i++, item);
+        if (v8Runtime == null || v8Runtime.isClosed()) {
+            throw new EvaluatorException("JavaScript runtime is not available");
         }
     }
 
-    private void setArrayValue(V8ValueObject v8Object, String key, Object arrayObj) throws JavetException {
-        V8ValueArray arrayValue = trackV8Value(v8Runtime.createV8ValueArray());
-        setArrayToV8Array(arrayValue, arrayObj);
-        v8Object.set(key, arrayValue);
+    /**
+     * Installs the static bindings of this script. Each runtime converts the bindings of a script once and
+     * keeps them in a holder object, switching between scripts then only reassigns the globals.
+     */
+    private void installBindings() throws JavetException {
+        // Looked up first, it notices a context reset that also wiped the libraries
+        JavetRuntimeState.ScriptBindings scriptBindings = state.getScriptBindings(bindings);
+        installLibraries();
+
+        if (scriptBindings == null) {
+            scriptBindings = createScriptBindings(bindings);
+            state.putScriptBindings(bindings, scriptBindings);
+        }
+        scriptBindings.resetProxies();
+        state.activate(scriptBindings);
     }
 
-    private void setArrayToV8Array(V8ValueArray array, Object arrayObj) throws JavetException {
-        int length = Array.getLength(arrayObj);
-        for (int i = 0; i < length; i++) {
-            setArrayItem(array, i, Array.get(arrayObj, i));
+    /**
+     * Evaluates the libraries this runtime has not evaluated yet. A library that fails is logged and tried
+     * again on the next call, the scripts using it fail on their own meanwhile.
+     */
+    private void installLibraries() {
+        if (libraries.isEmpty() || !state.hasPendingLibraries(libraries)) {
+            return;
         }
-    }
 
-    private void setDateValue(V8ValueObject v8Object, String key, long timeInMillis) throws JavetException {
-        V8ValueObject dateObj = trackV8Value(v8Runtime.getExecutor("new Date(" + timeInMillis + ")").executeObject());
-        trackV8Value(dateObj);
-        v8Object.set(key, dateObj);
+        for (Map.Entry<String, String> library : libraries.entrySet()) {
+            if (state.isLibraryInstalled(library.getKey())) {
+                continue;
+            }
+            try {
+                v8Runtime.getExecutor(library.getValue()).setResourceName(library.getKey()).executeVoid();
+                state.markLibraryInstalled(library.getKey());
+            } catch (JavetException e) {
+                if (state.markLibraryFailed(library.getKey())) {
+                    LOGGER.warn("Library " + library.getKey() + " failed to load. " + e.getMessage());
+                }
+            }
+        }
     }
 
-    private void setPatternValue(V8ValueObject v8Object, String key, Pattern pattern) throws JavetException {
-        V8ValueObject regexObj = trackV8Value(v8Runtime.getExecutor("new RegExp('" +
-                pattern.pattern().replace("'", "\\'") + "')").executeObject());
-        trackV8Value(regexObj);
-        v8Object.set(key, regexObj);
+    /**
+     * Static bindings live as long as the runtime, so the placeholder data is exposed as proxies instead of
+     * copies. Scripts then only reach the keys they actually use. Every other binding is converted as before.
+     */
+    @SuppressWarnings("unchecked")
+    private JavetRuntimeState.ScriptBindings createScriptBindings(Map<String, Object> bindingsMap) throws JavetException {
+        final List<JavetMapProxy> proxies = new ArrayList<>();
+        // Not part of the arena, the holder lives as long as the runtime keeps this script
+        final V8ValueObject holder = v8Runtime.createV8ValueObject();
+
+        final JavetValueArena arena = state.getArena();
+        final int mark = arena.mark();
+        try {
+            final JavetValueConverter converter = state.getConverter();
+            for (Map.Entry<String, Object> entry : bindingsMap.entrySet()) {
+                final Object value = entry.getValue();
+                if (PROXIED_BINDINGS.contains(entry.getKey()) && value != null) {
+                    Object target = value;
+                    if (value instanceof Map<?, ?> map) {
+                        final JavetMapProxy mapProxy = new JavetMapProxy((Map<String, Object>) map);
+                        proxies.add(mapProxy);
+                        target = mapProxy;
+                    }
+                    try (V8Value proxy = PROXY_CONVERTER.toV8Value(v8Runtime, target)) {
+                        holder.set(entry.getKey(), proxy);
+                    }
+                } else {
+                    holder.set(entry.getKey(), converter.toV8Value(value));
+                }
+            }
+        } finally {
+            arena.release(mark);
+        }
+        return new JavetRuntimeState.ScriptBindings(bindingsMap.keySet(), holder, proxies);
     }
 
-    private void setArrayItem(V8ValueArray array, int index, Object item) throws JavetException {
-        if (item == null) {
-            array.setNull(index);
+    private void applyBindings(Map<String, Object> bindingsMap) throws JavetException {
+        if (bindingsMap == null || bindingsMap.isEmpty()) {
             return;
         }
 
-        if (item instanceof Number number) {
-            if (number instanceof Integer || number instanceof Long) {
-                array.set(index, number.longValue());
-            } else {
-                array.set(index, number.doubleValue());
-            }
-        } else if (item instanceof Boolean || item instanceof String || item instanceof Character) {
-            array.set(index, item);
-        } else if (item instanceof Date date) {
-            V8ValueObject dateObj = trackV8Value(v8Runtime.getExecutor("new Date(" + date.getTime() + ")").executeObject());
-            array.set(index, dateObj);
-        } else {
-            array.set(index, item.toString());
+        final V8ValueObject globalObject = state.getGlobalObject();
+        final JavetValueConverter converter = state.getConverter();
+
+        for (Map.Entry<String, Object> entry : bindingsMap.entrySet()) {
+            globalObject.set(entry.getKey(), converter.toV8Value(entry.getValue()));
         }
     }
 
@@ -320,28 +321,55 @@ public class JavetScriptEvaluator implements ScriptEvaluator, Closeable {
         }
     }
 
-    @Override
-    public void close() throws IOException {
-        if (closed) {
-            return;
+    /**
+     * Converts arrays and objects into lists and maps, and copies typed arrays into buffers. The bytes
+     * are copied because the memory V8 exposes for a buffer is only valid while its handle is open.
+     */
+    private Object convertToStructuredObject(V8Value value, int depth) throws JavetException {
+        if (value.isNull() || value.isUndefined()) {
+            return null;
+        } else if (value instanceof V8ValuePrimitive<?> primitive) {
+            return primitive.getValue();
         }
 
-        Set<V8Value> threadValues = THREAD_V8_VALUES.get();
-
-        List<V8Value> valuesToClose = new ArrayList<>();
+        if (depth >= MAX_RESULT_DEPTH) {
+            throw new EvaluatorException("Script result is nested deeper than " + MAX_RESULT_DEPTH + " levels");
+        }
 
-        for (V8Value value : threadValues) {
-            if (value != null && !value.isClosed()) {
-                valuesToClose.add(value);
+        if (value instanceof V8ValueTypedArray typedArray) {
+            return ByteBuffer.wrap(typedArray.toBytes());
+        } else if (value instanceof V8ValueArrayBuffer arrayBuffer) {
+            return ByteBuffer.wrap(arrayBuffer.toBytes());
+        } else if (value instanceof V8ValueArray array) {
+            final int length = array.getLength();
+            final List<Object> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                try (V8Value item = array.get(i)) {
+                    list.add(convertToStructuredObject(item, depth + 1));
+                }
             }
+            return list;
+        } else if (value instanceof V8ValueFunction) {
+            return value.toString();
+        } else if (value instanceof V8ValueObject object) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            try (IV8ValueArray keys = object.getOwnPropertyNames()) {
+                final int length = keys.getLength();
+                for (int i = 0; i < length; i++) {
+                    try (V8Value key = keys.get(i); V8Value item = object.get(key)) {
+                        map.put(key.toString(), convertToStructuredObject(item, depth + 1));
+                    }
+                }
+            }
+            return map;
         }
+        return value.toString();
+    }
 
-        closeV8ValuesEfficiently(valuesToClose);
-        threadValues.clear();
-        valueUsageCounter.clear();
-
-        if (v8Runtime != null) {
-            RUNTIME_VALUES.remove(v8Runtime);
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
         }
 
         closed = true;
@@ -359,4 +387,9 @@ public class JavetScriptEvaluator implements ScriptEvaluator, Closeable {
     public boolean isClosed() {
         return closed;
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    interface JavetSupplier<T> {
+        T get() throws JavetException;
+    }
+}
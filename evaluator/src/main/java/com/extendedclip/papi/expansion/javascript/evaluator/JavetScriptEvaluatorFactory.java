@@ -2,15 +2,23 @@ package com.extendedclip.papi.expansion.javascript.evaluator;
 
 import com.caoccao.javet.enums.JSRuntimeType;
 import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Host;
 import com.caoccao.javet.interop.V8Runtime;
 import com.caoccao.javet.interop.engine.IJavetEngine;
+import com.caoccao.javet.interop.engine.JavetEngine;
 import com.caoccao.javet.interop.engine.JavetEngineConfig;
 import com.caoccao.javet.interop.engine.JavetEnginePool;
+import com.caoccao.javet.interop.options.V8RuntimeOptions;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -18,27 +26,40 @@ import java.util.concurrent.TimeUnit;
 import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
 
 public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory, Closeable {
-    private final JavetEnginePool<V8Runtime> enginePool;
+    private volatile JavetEnginePool<V8Runtime> enginePool;
+    // Pools replaced on reload, closed once their last engine has been given back
+    private final List<JavetEnginePool<V8Runtime>> retiredPools = new CopyOnWriteArrayList<>();
     private final ConcurrentHashMap<JavetScriptEvaluator, Boolean> activeEvaluators;
+    private final Set<PinnedFactory> pinnedFactories = ConcurrentHashMap.newKeySet();
     private final ScheduledExecutorService cleanupService;
 
     private final boolean enableResourceTracking;
+    private final int poolSize;
+    private final boolean gc;
+    private final boolean startupSnapshot;
 
     private volatile boolean closed = false;
+    private volatile boolean snapshotted = false;
+    // Libraries the runtimes still have to evaluate themselves, empty while a snapshot holds them
+    private volatile Map<String, String> runtimeLibraries = Collections.emptyMap();
+    private volatile byte[] snapshot;
 
     public JavetScriptEvaluatorFactory(int poolSize, int poolCleanupIntervalSeconds, boolean enableResourceTracking, boolean gc) {
+        this(poolSize, poolCleanupIntervalSeconds, enableResourceTracking, gc, false);
+    }
+
+    public JavetScriptEvaluatorFactory(int poolSize, int poolCleanupIntervalSeconds, boolean enableResourceTracking, boolean gc, boolean startupSnapshot) {
         var poolSize1 = Math.max(1, poolSize);
 
         this.enableResourceTracking = enableResourceTracking;
+        this.poolSize = poolSize1;
+        this.gc = gc;
+        this.startupSnapshot = startupSnapshot;
 
-        JavetEngineConfig config = new JavetEngineConfig();
-        config.setAllowEval(true);
-        config.setGlobalName("globalThis");
-        config.setJSRuntimeType(JSRuntimeType.V8);
-        config.setPoolMaxSize(poolSize1);
-        config.setGCBeforeEngineClose(gc);
-
-        this.enginePool = new JavetEnginePool<>(config);
+        // Loads the native library on the thread building the factory. If a short-lived thread loads it,
+        // runtimes created later on other threads, such as pinned ones, crash V8
+        V8Host.getV8Instance();
+        this.enginePool = createEnginePool(null);
 
         this.activeEvaluators = new ConcurrentHashMap<>();
 
@@ -59,7 +80,26 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
     }
 
     public static ScriptEvaluatorFactory create(boolean gc, int poolSize) {
-        return new JavetScriptEvaluatorFactory(poolSize, 60, true, gc);
+        return create(gc, poolSize, false);
+    }
+
+    /**
+     * @param startupSnapshot whether runtimes start from a snapshot of the libraries and script top levels
+     *                        handed to {@link #preload}, instead of evaluating them in each runtime
+     */
+    public static ScriptEvaluatorFactory create(boolean gc, int poolSize, boolean startupSnapshot) {
+        return new JavetScriptEvaluatorFactory(poolSize, 60, true, gc, startupSnapshot);
+    }
+
+    private JavetEnginePool<V8Runtime> createEnginePool(byte[] snapshot) {
+        JavetEngineConfig config = new JavetEngineConfig();
+        config.setAllowEval(true);
+        config.setGlobalName("globalThis");
+        config.setJSRuntimeType(JSRuntimeType.V8);
+        config.setPoolMaxSize(poolSize);
+        config.setGCBeforeEngineClose(gc);
+
+        return snapshot == null ? new JavetStatefulEnginePool<>(config) : new SnapshotEnginePool(config, snapshot);
     }
 
     public ScriptEvaluator create() throws EvaluatorException {
@@ -73,10 +113,22 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
         }
 
         try {
-            IJavetEngine<V8Runtime> engine = enginePool.getEngine();
+            // The engine goes back to the pool it came from, even if a reload replaced that pool meanwhile
+            final JavetEnginePool<V8Runtime> pool = enginePool;
+            final EngineLeaseEvent leaseEvent = new EngineLeaseEvent();
+            leaseEvent.begin();
+            IJavetEngine<V8Runtime> engine = pool.getEngine();
+            leaseEvent.end();
+            if (leaseEvent.shouldCommit()) {
+                leaseEvent.engine = "v8";
+                leaseEvent.poolSize = poolSize;
+                leaseEvent.activeEngines = pool.getActiveEngineCount();
+                leaseEvent.idleEngines = pool.getIdleEngineCount();
+                leaseEvent.commit();
+            }
             V8Runtime runtime = engine.getV8Runtime();
 
-            JavetScriptEvaluator evaluator = new JavetScriptEvaluator(runtime, bindings);
+            JavetScriptEvaluator evaluator = new JavetScriptEvaluator(runtime, JavetStatefulEnginePool.getState(engine), bindings, runtimeLibraries);
 
             if (enableResourceTracking) {
                 activeEvaluators.put(evaluator, Boolean.TRUE);
@@ -85,7 +137,7 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
                     try {
                         activeEvaluators.remove(ev);
 
-                        enginePool.releaseEngine(engine);
+                        pool.releaseEngine(engine);
                     } catch (Exception e) {
                         throw new RuntimeException("Failed to release V8 runtime", e);
                     }
@@ -98,9 +150,69 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
         }
     }
 
+    @Override
+    public PreparedScript prepare(final String source, final String entryFunction) {
+        return new JavetPreparedScript(source, entryFunction);
+    }
+
+    /**
+     * Builds a snapshot from the libraries and script top levels and replaces the pool with one whose
+     * runtimes start from it. Runtimes of the previous pool keep serving the evaluators that hold them.
+     * Without snapshots, every runtime evaluates the libraries the first time it is used.
+     */
+    @Override
+    public void preload(final Map<String, String> libraries, final Collection<PreparedScript> scripts) {
+        if (closed) {
+            return;
+        }
+        final boolean hasEntryFunctions = scripts.stream().anyMatch(script -> script.getEntryFunction() != null);
+        if (!startupSnapshot || (libraries.isEmpty() && !hasEntryFunctions && !snapshotted)) {
+            runtimeLibraries = libraries;
+            return;
+        }
+
+        final byte[] snapshot;
+        try {
+            snapshot = JavetSnapshot.create(libraries, scripts);
+        } catch (JavetException e) {
+            LOGGER.error("Failed to create V8 snapshot, every runtime evaluates the libraries instead", e);
+            runtimeLibraries = libraries;
+            return;
+        }
+
+        final JavetEnginePool<V8Runtime> previous = enginePool;
+        enginePool = createEnginePool(snapshot);
+        this.snapshot = snapshot;
+        runtimeLibraries = Collections.emptyMap();
+        snapshotted = true;
+        retiredPools.add(previous);
+    }
+
+    /**
+     * The pinned runtime is created next to the pool rather than taken from it, so worker threads never
+     * hold pool slots that other callers wait for.
+     */
+    @Override
+    public ScriptEvaluatorFactory pin() {
+        final PinnedFactory pinned = new PinnedFactory(Thread.currentThread());
+        pinnedFactories.add(pinned);
+        return pinned;
+    }
+
+    @Override
+    public String getCodeCacheVersion() {
+        // V8 checks its own flags when it reads the data, only the version is left to the caller
+        return "v8-" + JSRuntimeType.V8.getVersion();
+    }
+
     private void performCleanup() {
         try {
-            JavetScriptEvaluator.performGlobalCleanup();
+            for (JavetEnginePool<V8Runtime> pool : retiredPools) {
+                if (pool.getActiveEngineCount() == 0) {
+                    retiredPools.remove(pool);
+                    pool.close();
+                }
+            }
 
             for (JavetScriptEvaluator evaluator : activeEvaluators.keySet()) {
                 if (evaluator.isClosed())
@@ -140,7 +252,13 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
             activeEvaluators.clear();
         }
 
+        releasePinnedFactories();
+
         try {
+            for (JavetEnginePool<V8Runtime> pool : retiredPools) {
+                pool.close();
+            }
+            retiredPools.clear();
             enginePool.close();
             LOGGER.info("JavetScriptEvaluatorFactory is closed");
         } catch (Exception e) {
@@ -182,7 +300,12 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
     }
 
     private void dispose() {
+        releasePinnedFactories();
         try {
+            for (JavetEnginePool<V8Runtime> pool : retiredPools) {
+                pool.close();
+            }
+            retiredPools.clear();
             if (enginePool != null) {
                 enginePool.close();
             }
@@ -190,4 +313,110 @@ public final class JavetScriptEvaluatorFactory implements ScriptEvaluatorFactory
             throw new RuntimeException("Failed to dispose Javet engine pool", e);
         }
     }
+
+    private void releasePinnedFactories() {
+        for (PinnedFactory pinned : pinnedFactories) {
+            pinned.release();
+        }
+    }
+
+    /**
+     * Creates evaluators on one runtime of its own, replacing it when a reload brings a new snapshot.
+     * <p>
+     * The runtime is only ever used by the thread that pinned it, so only that thread closes it, unless
+     * the thread is gone already. Releasing it from anywhere else stops the script running on it and
+     * refuses new evaluators until the owner closes it.
+     */
+    private final class PinnedFactory implements ScriptEvaluatorFactory, Closeable {
+        private final Thread owner;
+        private V8Runtime v8Runtime;
+        private JavetRuntimeState runtimeState;
+        private byte[] runtimeSnapshot;
+        private boolean released;
+
+        private PinnedFactory(final Thread owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public synchronized ScriptEvaluator create(final Map<String, Object> bindings) {
+            if (closed || released) {
+                throw new EvaluatorException("Factory has been closed");
+            }
+
+            try {
+                final byte[] currentSnapshot = snapshot;
+                if (v8Runtime == null || v8Runtime.isClosed() || runtimeSnapshot != currentSnapshot) {
+                    closeRuntime();
+                    final V8RuntimeOptions options = new V8RuntimeOptions();
+                    options.setGlobalName("globalThis");
+                    options.setSnapshotBlob(currentSnapshot);
+                    v8Runtime = V8Host.getV8Instance().createV8Runtime(options);
+                    v8Runtime.allowEval(true);
+                    runtimeState = new JavetRuntimeState(v8Runtime);
+                    runtimeSnapshot = currentSnapshot;
+                }
+            } catch (JavetException e) {
+                throw new EvaluatorException("Create JavaScript evaluator failed: " + e.getMessage(), e);
+            }
+            return new JavetScriptEvaluator(v8Runtime, runtimeState, bindings, runtimeLibraries);
+        }
+
+        @Override
+        public PreparedScript prepare(final String source, final String entryFunction) {
+            return JavetScriptEvaluatorFactory.this.prepare(source, entryFunction);
+        }
+
+        @Override
+        public synchronized void close() {
+            released = true;
+            pinnedFactories.remove(this);
+            closeRuntime();
+        }
+
+        private synchronized void release() {
+            released = true;
+            if (!owner.isAlive()) {
+                close();
+            } else if (v8Runtime != null && !v8Runtime.isClosed()) {
+                v8Runtime.terminateExecution();
+            }
+        }
+
+        private void closeRuntime() {
+            if (v8Runtime == null) {
+                return;
+            }
+            try {
+                v8Runtime.close();
+            } catch (JavetException e) {
+                LOGGER.warn("Failed to close pinned V8 runtime. " + e);
+            }
+            v8Runtime = null;
+            runtimeState = null;
+        }
+    }
+
+    /**
+     * Creates its runtimes from a startup snapshot, otherwise the same as the default pool.
+     */
+    private static final class SnapshotEnginePool extends JavetStatefulEnginePool<V8Runtime> {
+        private final byte[] snapshot;
+
+        private SnapshotEnginePool(final JavetEngineConfig config, final byte[] snapshot) {
+            super(config);
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        protected JavetEngine<V8Runtime> createEngine() throws JavetException {
+            final V8RuntimeOptions options = new V8RuntimeOptions();
+            options.setGlobalName(config.getGlobalName());
+            options.setSnapshotBlob(snapshot);
+            final V8Runtime v8Runtime = V8Host.getV8Instance().createV8Runtime(true, options);
+            v8Runtime.allowEval(config.isAllowEval());
+            v8Runtime.setLogger(config.getJavetLogger());
+            return new JavetStatefulEngine<>(this, v8Runtime);
+        }
+    }
 }
\ No newline at end of file
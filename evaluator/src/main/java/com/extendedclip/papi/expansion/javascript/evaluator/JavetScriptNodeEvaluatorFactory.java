@@ -8,72 +8,182 @@ import com.caoccao.javet.interop.engine.IJavetEngine;
 import com.caoccao.javet.interop.engine.JavetEngineConfig;
 import com.caoccao.javet.interop.engine.JavetEnginePool;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public final class JavetScriptNodeEvaluatorFactory implements ScriptEvaluatorFactory {
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * Runs scripts in pooled Node.js runtimes, so scripts can use Node's built-in modules. Runtimes are
+ * leased per evaluation and given back when the evaluator is closed, the same way as
+ * {@link JavetScriptEvaluatorFactory} does for plain V8.
+ */
+public final class JavetScriptNodeEvaluatorFactory implements ScriptEvaluatorFactory, Closeable {
     private final JavetEnginePool<NodeRuntime> enginePool;
+    private final ConcurrentHashMap<JavetScriptEvaluator, Boolean> activeEvaluators = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleanupService;
+    private final int poolSize;
 
-    private JavetScriptNodeEvaluatorFactory(JavetEngineConfig config) {
-        if (true) throw new UnsupportedOperationException("Node runtime is not supported");
-        this.enginePool = new JavetEnginePool<>(config);
+    private volatile boolean closed = false;
+    private volatile Map<String, String> libraries = Collections.emptyMap();
 
-    }
+    private JavetScriptNodeEvaluatorFactory(int poolSize, int poolCleanupIntervalSeconds, boolean gc) {
+        this.poolSize = Math.max(1, poolSize);
 
-    public static ScriptEvaluatorFactory create(boolean gc, int poolSize) {
         JavetEngineConfig config = new JavetEngineConfig();
         config.setJSRuntimeType(JSRuntimeType.Node);
         config.setAllowEval(true);
         config.setGCBeforeEngineClose(gc);
-        config.setPoolMaxSize(poolSize);
+        config.setPoolMaxSize(this.poolSize);
+
+        this.enginePool = new JavetStatefulEnginePool<>(config);
+
+        this.cleanupService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "javet-node-cleanup-thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (poolCleanupIntervalSeconds > 0) {
+            this.cleanupService.scheduleAtFixedRate(
+                    this::performCleanup,
+                    poolCleanupIntervalSeconds,
+                    poolCleanupIntervalSeconds,
+                    TimeUnit.SECONDS
+            );
+        }
+    }
 
-        return new JavetScriptNodeEvaluatorFactory(config);
+    public static ScriptEvaluatorFactory create(boolean gc, int poolSize) {
+        return new JavetScriptNodeEvaluatorFactory(poolSize, 60, gc);
     }
 
     @Override
     public ScriptEvaluator create(final Map<String, Object> bindings) {
+        if (closed) {
+            throw new EvaluatorException("Factory has been closed");
+        }
+
         try {
+            final EngineLeaseEvent leaseEvent = new EngineLeaseEvent();
+            leaseEvent.begin();
             IJavetEngine<NodeRuntime> engine = enginePool.getEngine();
+            leaseEvent.end();
+            if (leaseEvent.shouldCommit()) {
+                leaseEvent.engine = "v8_node";
+                leaseEvent.poolSize = poolSize;
+                leaseEvent.activeEngines = enginePool.getActiveEngineCount();
+                leaseEvent.idleEngines = enginePool.getIdleEngineCount();
+                leaseEvent.commit();
+            }
             V8Runtime runtime = engine.getV8Runtime();
 
-            return new JavetScriptEvaluator(runtime, bindings) {
-                @Override
-                public void close() {
-                    try {
-                        super.close();
-
-                        if (runtime != null && !runtime.isClosed()) {
-                            try {
-                                runtime.lowMemoryNotification();
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-
-                        if (engine != null && !engine.isClosed()) {
-                            engine.close();
-                        }
-                    } catch (Exception e) {
-                        throw new RuntimeException("Failed to close Javet evaluator", e);
-                    }
+            JavetScriptEvaluator evaluator = new JavetScriptEvaluator(runtime, JavetStatefulEnginePool.getState(engine), bindings, libraries);
+            activeEvaluators.put(evaluator, Boolean.TRUE);
+
+            evaluator.setRuntimeReleaseHook((ev) -> {
+                try {
+                    activeEvaluators.remove(ev);
+
+                    enginePool.releaseEngine(engine);
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to release Node.js runtime", e);
                 }
-            };
-        } catch (JavetException e) {
-            throw new RuntimeException("Failed to create Javet evaluator", e);
+            });
+
+            return evaluator;
+        } catch (Exception e) {
+            throw new EvaluatorException("Create Node.js evaluator failed: " + e.getMessage(), e);
         }
     }
 
     @Override
-    public void cleanBinaries() {
-        dispose();
+    public PreparedScript prepare(final String source, final String entryFunction) {
+        return new JavetPreparedScript(source, entryFunction);
+    }
+
+    /**
+     * Node.js runtimes can't be created from a snapshot, so every runtime evaluates the libraries the
+     * first time it is used.
+     */
+    @Override
+    public void preload(final Map<String, String> libraries, final Collection<PreparedScript> scripts) {
+        this.libraries = libraries;
+    }
+
+    @Override
+    public String getCodeCacheVersion() {
+        return "node-" + JSRuntimeType.Node.getVersion();
+    }
+
+    private void performCleanup() {
+        try {
+            for (JavetScriptEvaluator evaluator : activeEvaluators.keySet()) {
+                if (evaluator.isClosed())
+                    activeEvaluators.remove(evaluator);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to perform resource cleanup", e);
+        }
+    }
+
+    public int getActiveEvaluatorsCount() {
+        return activeEvaluators.size();
+    }
+
+    public int getActiveEngineCount() {
+        return enginePool.getActiveEngineCount();
+    }
+
+    public int getIdleEngineCount() {
+        return enginePool.getIdleEngineCount();
     }
 
-    private void dispose() {
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
         try {
-            if (enginePool != null) {
-                enginePool.close();
+            cleanupService.shutdown();
+            cleanupService.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to shutdown Javet cleanup service", e);
+        }
+
+        for (JavetScriptEvaluator evaluator : activeEvaluators.keySet()) {
+            try {
+                evaluator.close();
+            } catch (Exception e) {
+                LOGGER.error("Closing evaluator failed: " + e.getMessage() + " ... ");
             }
-        } catch (JavetException e) {
+        }
+        activeEvaluators.clear();
+
+        try {
+            enginePool.close();
+            LOGGER.info("JavetScriptNodeEvaluatorFactory is closed");
+        } catch (Exception e) {
+            throw new IOException("Closing JavetScriptNodeEvaluatorFactory failed:", e);
+        }
+    }
+
+    @Override
+    public void cleanBinaries() {
+        try {
+            close();
+        } catch (IOException e) {
             throw new RuntimeException("Failed to dispose Javet engine pool", e);
         }
     }
-}
\ No newline at end of file
+}
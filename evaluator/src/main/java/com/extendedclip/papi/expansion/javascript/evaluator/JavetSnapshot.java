@@ -0,0 +1,115 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Host;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.interop.options.V8RuntimeOptions;
+import com.caoccao.javet.values.V8Value;
+import com.caoccao.javet.values.reference.V8ValueFunction;
+import com.caoccao.javet.values.reference.V8ValueGlobalObject;
+import com.caoccao.javet.values.reference.V8ValueMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * Builds V8 startup snapshots holding the shared libraries and the top level of every script with an
+ * entry function, so a runtime created from it starts with all of them already evaluated.
+ * <p>
+ * Entry functions are kept in a hidden map on the global object, keyed by the module source they came
+ * from. Top levels that need bindings fail while the snapshot is built and are left out, those still run
+ * in each runtime the first time they are called.
+ * <p>
+ * Every library and top level gets a few seconds, one that runs longer is terminated and left out, so
+ * a script that never returns can't hang a reload.
+ */
+final class JavetSnapshot {
+    static final String ENTRY_FUNCTIONS = "__snapshotEntryFunctions";
+    private static final long EVALUATION_TIMEOUT_MILLIS = 5000;
+
+    private JavetSnapshot() {
+    }
+
+    static byte[] create(final Map<String, String> libraries, final Collection<PreparedScript> scripts) throws JavetException {
+        final V8RuntimeOptions options = new V8RuntimeOptions();
+        options.setCreateSnapshotEnabled(true);
+        // No setGlobalName("globalThis") unlike the pooled runtimes: Javet installs a native callback for a
+        // custom global name, which V8 refuses to serialize
+
+        final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "javet-snapshot-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (V8Runtime v8Runtime = V8Host.getV8Instance().createV8Runtime(options)) {
+            for (Map.Entry<String, String> library : libraries.entrySet()) {
+                try (V8Value ignored = runLimited(watchdog, v8Runtime, () -> v8Runtime.getExecutor(library.getValue()).setResourceName(library.getKey()).execute())) {
+                    // Only evaluated for what it declares
+                } catch (JavetException e) {
+                    LOGGER.warn("Library " + library.getKey() + " failed to load. " + e.getMessage());
+                }
+            }
+
+            v8Runtime.getExecutor("Object.defineProperty(globalThis, '" + ENTRY_FUNCTIONS + "', { value: new Map() })").executeVoid();
+            int entryFunctions = 0;
+            try (V8ValueGlobalObject globalObject = v8Runtime.getGlobalObject();
+                 V8ValueMap registry = globalObject.get(ENTRY_FUNCTIONS)) {
+                for (PreparedScript script : scripts) {
+                    if (script.getEntryFunction() == null) {
+                        continue;
+                    }
+                    final String moduleSource = script.getModuleSource();
+                    try (V8Value function = runLimited(watchdog, v8Runtime, () -> v8Runtime.getExecutor(moduleSource).execute())) {
+                        if (function instanceof V8ValueFunction) {
+                            registry.set(moduleSource, function);
+                            entryFunctions++;
+                        }
+                    } catch (JavetException e) {
+                        LOGGER.debug("Left script out of the snapshot. " + e.getMessage());
+                    }
+                }
+            }
+
+            final byte[] snapshot = v8Runtime.createSnapshot();
+            LOGGER.info("Created V8 snapshot with {} libraries and {} entry functions ({} KiB)",
+                    libraries.size(), entryFunctions, snapshot.length / 1024);
+            return snapshot;
+        } finally {
+            watchdog.shutdownNow();
+        }
+    }
+
+    private static V8Value runLimited(final ScheduledExecutorService watchdog, final V8Runtime v8Runtime,
+                                      final JavetScriptEvaluator.JavetSupplier<V8Value> evaluation) throws JavetException {
+        final ScheduledFuture<?> termination = watchdog.schedule(v8Runtime::terminateExecution, EVALUATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            return evaluation.get();
+        } finally {
+            termination.cancel(false);
+        }
+    }
+
+    /**
+     * @return the entry function the snapshot holds for the given module source, or null if it holds none
+     */
+    static V8ValueFunction findEntryFunction(final V8Runtime v8Runtime, final String moduleSource) throws JavetException {
+        try (V8ValueGlobalObject globalObject = v8Runtime.getGlobalObject();
+             V8Value registry = globalObject.get(ENTRY_FUNCTIONS)) {
+            if (!(registry instanceof V8ValueMap map)) {
+                return null;
+            }
+            final V8Value value = map.get(moduleSource);
+            if (value instanceof V8ValueFunction function) {
+                return function;
+            }
+            value.close();
+            return null;
+        }
+    }
+}
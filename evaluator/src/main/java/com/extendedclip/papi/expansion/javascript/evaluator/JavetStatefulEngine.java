@@ -0,0 +1,34 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.interop.engine.IJavetEnginePool;
+import com.caoccao.javet.interop.engine.JavetEngine;
+
+/**
+ * A pooled engine that carries what scripts installed in its runtime, forgotten whenever the runtime is reset.
+ */
+final class JavetStatefulEngine<R extends V8Runtime> extends JavetEngine<R> {
+    private final JavetRuntimeState state;
+
+    JavetStatefulEngine(final IJavetEnginePool<R> pool, final R v8Runtime) {
+        super(pool, v8Runtime);
+        this.state = new JavetRuntimeState(v8Runtime);
+    }
+
+    JavetRuntimeState getState() {
+        return state;
+    }
+
+    @Override
+    public void resetContext() throws JavetException {
+        state.reset();
+        super.resetContext();
+    }
+
+    @Override
+    public void resetIsolate() throws JavetException {
+        state.reset();
+        super.resetIsolate();
+    }
+}
@@ -0,0 +1,33 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.interop.engine.IJavetEngine;
+import com.caoccao.javet.interop.engine.JavetEngine;
+import com.caoccao.javet.interop.engine.JavetEngineConfig;
+import com.caoccao.javet.interop.engine.JavetEnginePool;
+
+/**
+ * Hands out {@link JavetStatefulEngine}s, so the installed bindings and libraries stay with their runtime.
+ */
+class JavetStatefulEnginePool<R extends V8Runtime> extends JavetEnginePool<R> {
+    JavetStatefulEnginePool(final JavetEngineConfig config) {
+        super(config);
+    }
+
+    /**
+     * @return the state of the engine's runtime, or a fresh one for an engine this pool did not create
+     */
+    static JavetRuntimeState getState(final IJavetEngine<? extends V8Runtime> engine) throws JavetException {
+        if (engine instanceof JavetStatefulEngine<?> statefulEngine) {
+            return statefulEngine.getState();
+        }
+        return new JavetRuntimeState(engine.getV8Runtime());
+    }
+
+    @Override
+    protected JavetEngine<R> createEngine() throws JavetException {
+        final JavetEngine<R> engine = super.createEngine();
+        return new JavetStatefulEngine<>(this, engine.getV8Runtime());
+    }
+}
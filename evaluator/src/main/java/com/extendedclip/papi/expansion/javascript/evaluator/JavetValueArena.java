@@ -0,0 +1,45 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.values.V8Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * Keeps the V8 references created during a call and closes them once the call is done. A runtime keeps
+ * one arena and reuses it for every call, a call nested on the same runtime only releases what it added.
+ */
+final class JavetValueArena {
+    private final List<V8Value> values = new ArrayList<>();
+
+    /**
+     * @return the position to {@link #release(int) release} back to once the call is done
+     */
+    int mark() {
+        return values.size();
+    }
+
+    <T extends V8Value> T add(final T value) {
+        values.add(value);
+        return value;
+    }
+
+    /**
+     * Closes every reference added since the given mark, the most recent first.
+     */
+    void release(final int mark) {
+        for (int i = values.size() - 1; i >= mark; i--) {
+            final V8Value value = values.remove(i);
+            try {
+                if (!value.isClosed()) {
+                    value.close();
+                }
+            } catch (JavetException e) {
+                LOGGER.warn("Failed to release V8 value. " + e);
+            }
+        }
+    }
+}
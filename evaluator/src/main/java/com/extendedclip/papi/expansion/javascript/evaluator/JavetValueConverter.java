@@ -0,0 +1,178 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.caoccao.javet.exceptions.JavetException;
+import com.caoccao.javet.interop.V8Runtime;
+import com.caoccao.javet.values.V8Value;
+import com.caoccao.javet.values.reference.V8ValueArray;
+import com.caoccao.javet.values.reference.V8ValueFunction;
+import com.caoccao.javet.values.reference.V8ValueGlobalObject;
+import com.caoccao.javet.values.reference.V8ValueObject;
+
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.net.URL;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * Converts binding values to V8 values. The converter of a class is picked once and cached, so converting
+ * a value is a single lookup instead of a chain of type checks. Every reference created is added to the
+ * arena of the runtime and closed with the call that created it.
+ */
+final class JavetValueConverter {
+    private static final ClassValue<Converter> CONVERTERS = new ClassValue<>() {
+        @Override
+        protected Converter computeValue(final Class<?> type) {
+            return converterFor(type);
+        }
+    };
+
+    private final V8Runtime v8Runtime;
+    private final JavetValueArena arena;
+    private V8ValueFunction regExpConstructor;
+
+    JavetValueConverter(final V8Runtime v8Runtime, final JavetValueArena arena) {
+        this.v8Runtime = v8Runtime;
+        this.arena = arena;
+    }
+
+    V8Value toV8Value(final Object value) throws JavetException {
+        if (value == null) {
+            return v8Runtime.createV8ValueNull();
+        }
+        return CONVERTERS.get(value.getClass()).convert(this, value);
+    }
+
+    private static Converter converterFor(final Class<?> type) {
+        if (type == Integer.class || type == Short.class || type == Byte.class) {
+            return (converter, value) -> converter.v8Runtime.createV8ValueInteger(((Number) value).intValue());
+        }
+        if (type == Long.class) {
+            return (converter, value) -> converter.toV8Long((Long) value);
+        }
+        if (Number.class.isAssignableFrom(type)) {
+            return (converter, value) -> converter.v8Runtime.createV8ValueDouble(((Number) value).doubleValue());
+        }
+        if (type == Boolean.class) {
+            return (converter, value) -> converter.v8Runtime.createV8ValueBoolean((Boolean) value);
+        }
+        if (type == String.class || type == Character.class || type.isEnum() || Enum.class.isAssignableFrom(type)
+                || type == URL.class || type == URI.class || type == Class.class) {
+            return (converter, value) -> converter.v8Runtime.createV8ValueString(value.toString());
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return (converter, value) -> converter.toV8Object((Map<?, ?>) value);
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return (converter, value) -> converter.toV8Array((Collection<?>) value);
+        }
+        if (type.isArray()) {
+            return type.getComponentType().isPrimitive()
+                    ? (converter, value) -> converter.toV8PrimitiveArray(value)
+                    : (converter, value) -> converter.toV8Array((Object[]) value);
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            return (converter, value) -> converter.v8Runtime.createV8ValueZonedDateTime(((Date) value).getTime());
+        }
+        if (Calendar.class.isAssignableFrom(type)) {
+            return (converter, value) -> converter.v8Runtime.createV8ValueZonedDateTime(((Calendar) value).getTimeInMillis());
+        }
+        if (type == Pattern.class) {
+            return (converter, value) -> converter.toV8RegExp((Pattern) value);
+        }
+        if (type == Optional.class) {
+            return (converter, value) -> converter.toV8Value(((Optional<?>) value).orElse(null));
+        }
+        return (converter, value) -> converter.v8Runtime.createV8ValueString(value.toString());
+    }
+
+    private V8Value toV8Long(final long value) throws JavetException {
+        if (value <= Integer.MAX_VALUE && value >= Integer.MIN_VALUE) {
+            return v8Runtime.createV8ValueInteger((int) value);
+        }
+        return v8Runtime.createV8ValueLong(value);
+    }
+
+    private V8Value toV8Object(final Map<?, ?> map) throws JavetException {
+        final V8ValueObject object = arena.add(v8Runtime.createV8ValueObject());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            object.set(String.valueOf(entry.getKey()), toV8Value(entry.getValue()));
+        }
+        return object;
+    }
+
+    private V8Value toV8Array(final Collection<?> collection) throws JavetException {
+        final V8ValueArray array = arena.add(v8Runtime.createV8ValueArray());
+        int index = 0;
+        for (Object item : collection) {
+            array.set(index++, toV8Value(item));
+        }
+        return array;
+    }
+
+    private V8Value toV8Array(final Object[] items) throws JavetException {
+        final V8ValueArray array = arena.add(v8Runtime.createV8ValueArray());
+        for (int i = 0; i < items.length; i++) {
+            array.set(i, toV8Value(items[i]));
+        }
+        return array;
+    }
+
+    private V8Value toV8PrimitiveArray(final Object items) throws JavetException {
+        final V8ValueArray array = arena.add(v8Runtime.createV8ValueArray());
+        final int length = Array.getLength(items);
+        for (int i = 0; i < length; i++) {
+            array.set(i, toV8Value(Array.get(items, i)));
+        }
+        return array;
+    }
+
+    private V8Value toV8RegExp(final Pattern pattern) throws JavetException {
+        // Kept for the life of the runtime context rather than the call
+        if (regExpConstructor == null || regExpConstructor.isClosed()) {
+            try (V8ValueGlobalObject globalObject = v8Runtime.getGlobalObject()) {
+                regExpConstructor = globalObject.get("RegExp");
+            }
+        }
+        return arena.add(regExpConstructor.callAsConstructor(pattern.pattern(), regExpFlags(pattern.flags())));
+    }
+
+    void close() {
+        if (regExpConstructor == null) {
+            return;
+        }
+        try {
+            if (!regExpConstructor.isClosed()) {
+                regExpConstructor.close();
+            }
+        } catch (JavetException e) {
+            LOGGER.warn("Failed to release RegExp constructor. " + e);
+        }
+        regExpConstructor = null;
+    }
+
+    private static String regExpFlags(final int flags) {
+        final StringBuilder builder = new StringBuilder(3);
+        if ((flags & Pattern.CASE_INSENSITIVE) != 0) {
+            builder.append('i');
+        }
+        if ((flags & Pattern.MULTILINE) != 0) {
+            builder.append('m');
+        }
+        if ((flags & Pattern.DOTALL) != 0) {
+            builder.append('s');
+        }
+        return builder.toString();
+    }
+
+    @FunctionalInterface
+    private interface Converter {
+        V8Value convert(JavetValueConverter converter, Object value) throws JavetException;
+    }
+}
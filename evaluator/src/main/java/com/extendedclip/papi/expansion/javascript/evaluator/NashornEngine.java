@@ -0,0 +1,98 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import org.openjdk.nashorn.api.scripting.JSObject;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lease of the shared script engine. Every script gets its own global object here, so scripts
+ * never see each other's variables, and a global is only used by one thread at a time.
+ */
+final class NashornEngine {
+    private final ScriptEngine scriptEngine;
+    // Looked up by identity of the static bindings
+    private final Map<Map<String, Object>, ScriptScope> scopes = new IdentityHashMap<>();
+    private long clock;
+
+    NashornEngine(final ScriptEngine scriptEngine) {
+        this.scriptEngine = scriptEngine;
+    }
+
+    ScriptEngine getScriptEngine() {
+        return scriptEngine;
+    }
+
+    /**
+     * Returns the scope of the script owning the given static bindings, creating it with the
+     * bindings installed and the libraries evaluated if there is none yet. Scopes built for other
+     * libraries are dropped, and past the given capacity the least recently used scope goes.
+     */
+    ScriptScope getScope(final Map<String, Object> bindings, final List<CompiledScript> libraries, final int capacity) throws ScriptException {
+        final ScriptScope existing = scopes.get(bindings);
+        if (existing != null && existing.libraries == libraries) {
+            existing.lastUsed = ++clock;
+            return existing;
+        }
+
+        // The libraries only change on reload, which also brings new scripts
+        scopes.values().removeIf(scope -> scope.libraries != libraries);
+        if (scopes.size() >= capacity) {
+            evictLeastRecentlyUsed();
+        }
+        final ScriptScope scope = new ScriptScope(libraries, scriptEngine.createBindings());
+        scope.bindings.putAll(bindings);
+        for (CompiledScript library : libraries) {
+            library.eval(scope.bindings);
+        }
+        scope.lastUsed = ++clock;
+        scopes.put(bindings, scope);
+        return scope;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Map.Entry<Map<String, Object>, ScriptScope> eldest = null;
+        for (Map.Entry<Map<String, Object>, ScriptScope> entry : scopes.entrySet()) {
+            if (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            scopes.remove(eldest.getKey());
+        }
+    }
+
+    static final class ScriptScope {
+        private final List<CompiledScript> libraries;
+        private final Bindings bindings;
+        private NashornPreparedScript entryScript;
+        private JSObject entryFunction;
+        private long lastUsed;
+
+        private ScriptScope(final List<CompiledScript> libraries, final Bindings bindings) {
+            this.libraries = libraries;
+            this.bindings = bindings;
+        }
+
+        Bindings getBindings() {
+            return bindings;
+        }
+
+        /**
+         * Returns the entry function of the given script, running its top level in this scope the
+         * first time.
+         */
+        JSObject getEntryFunction(final ScriptEngine scriptEngine, final NashornPreparedScript script) throws ScriptException {
+            if (entryScript != script) {
+                entryFunction = script.createEntryFunction(scriptEngine, bindings);
+                entryScript = script;
+            }
+            return entryFunction;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * A bounded pool of {@link NashornEngine} leases over a single script engine. Sharing the engine
+ * means a source is compiled once, however many threads run it.
+ * <p>
+ * Taking a lease never waits. When every pooled engine is in use, for example because a script
+ * resolves another script, the caller gets an extra lease that is dropped again when given back. Its
+ * scopes are built fresh, which costs evaluating the libraries again but never stalls the caller. At
+ * most as many extra leases as pooled engines exist at once, beyond that taking a lease fails.
+ */
+final class NashornEnginePool {
+    private static final int MAX_COMPILED_SOURCES = 128;
+    private static final int SPARE_SCOPES = 32;
+
+    private final ScriptEngine scriptEngine;
+    private final int maxSize;
+    private final Deque<NashornEngine> idleEngines = new ArrayDeque<>();
+    private final Set<NashornEngine> extraEngines = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, CompiledScript> compiledSources = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CompiledScript> eldest) {
+            return size() > MAX_COMPILED_SOURCES;
+        }
+    };
+    private volatile List<CompiledScript> libraries = Collections.emptyList();
+    private volatile int scopeCapacity = SPARE_SCOPES;
+    private int size;
+
+    NashornEnginePool(final ScriptEngine scriptEngine, final int maxSize) {
+        this.scriptEngine = scriptEngine;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    ScriptEngine getScriptEngine() {
+        return scriptEngine;
+    }
+
+    /**
+     * Takes an idle engine, creating one if there is none.
+     *
+     * @throws EvaluatorException if the pooled engines and every extra one are in use
+     */
+    synchronized NashornEngine acquire() {
+        final NashornEngine engine = idleEngines.pollLast();
+        if (engine != null) {
+            return engine;
+        }
+        if (size < maxSize) {
+            final NashornEngine created = new NashornEngine(scriptEngine);
+            size++;
+            return created;
+        }
+        if (extraEngines.size() >= maxSize) {
+            throw new EvaluatorException("All " + maxSize + " Nashorn engines and " + maxSize + " extra ones are in use");
+        }
+        final NashornEngine created = new NashornEngine(scriptEngine);
+        extraEngines.add(created);
+        return created;
+    }
+
+    synchronized void release(final NashornEngine engine) {
+        if (extraEngines.remove(engine)) {
+            return;
+        }
+        idleEngines.addLast(engine);
+    }
+
+    /**
+     * Compiles the shared libraries that every new scope evaluates before any script runs in it.
+     */
+    void setLibraries(final Map<String, String> sources) {
+        final List<CompiledScript> compiled = new ArrayList<>(sources.size());
+        for (Map.Entry<String, String> library : sources.entrySet()) {
+            try {
+                compiled.add(((Compilable) scriptEngine).compile(library.getValue()));
+            } catch (ScriptException e) {
+                LOGGER.warn("Library " + library.getKey() + " failed to compile. " + e.getMessage());
+            }
+        }
+        libraries = compiled;
+    }
+
+    List<CompiledScript> getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * Lets every engine keep a scope per loaded script, plus some for sources evaluated on the fly.
+     */
+    void setScriptCount(final int scriptCount) {
+        scopeCapacity = scriptCount + SPARE_SCOPES;
+    }
+
+    int getScopeCapacity() {
+        return scopeCapacity;
+    }
+
+    /**
+     * Compiles a source that was not prepared up front, reusing the result for the same text.
+     */
+    CompiledScript compile(final String source) throws ScriptException {
+        synchronized (compiledSources) {
+            final CompiledScript compiledScript = compiledSources.get(source);
+            if (compiledScript != null) {
+                return compiledScript;
+            }
+        }
+        final CompiledScript compiledScript = ((Compilable) scriptEngine).compile(source);
+        synchronized (compiledSources) {
+            compiledSources.put(source, compiledScript);
+        }
+        return compiledScript;
+    }
+
+    synchronized int getSize() {
+        return size;
+    }
+
+    synchronized int getIdleCount() {
+        return idleEngines.size();
+    }
+
+    synchronized int getExtraCount() {
+        return extraEngines.size();
+    }
+}
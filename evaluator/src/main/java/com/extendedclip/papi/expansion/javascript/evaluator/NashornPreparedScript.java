@@ -0,0 +1,61 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import org.openjdk.nashorn.api.scripting.JSObject;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class NashornPreparedScript implements PreparedScript {
+    private final String source;
+    private final String entryFunction;
+    private final Map<ScriptEngine, CompiledScript> compiledScripts = new ConcurrentHashMap<>();
+
+    public NashornPreparedScript(final String source) {
+        this(source, null);
+    }
+
+    public NashornPreparedScript(final String source, final String entryFunction) {
+        this.source = source;
+        this.entryFunction = entryFunction;
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String getEntryFunction() {
+        return entryFunction;
+    }
+
+    CompiledScript compile(final ScriptEngine scriptEngine) throws ScriptException {
+        CompiledScript compiledScript = compiledScripts.get(scriptEngine);
+        if (compiledScript == null) {
+            compiledScript = ((Compilable) scriptEngine).compile(entryFunction == null ? source : getModuleSource());
+            compiledScripts.put(scriptEngine, compiledScript);
+        }
+        return compiledScript;
+    }
+
+    /**
+     * Runs the script's top level with the given global bindings and returns its entry function.
+     */
+    JSObject createEntryFunction(final ScriptEngine scriptEngine, final Bindings bindings) throws ScriptException {
+        final Object value = compile(scriptEngine).eval(bindings);
+        if (!(value instanceof JSObject object) || !object.isFunction()) {
+            throw new EvaluatorException("Entry function '" + entryFunction + "' is not defined");
+        }
+        return object;
+    }
+
+    @Override
+    public void close() {
+        compiledScripts.clear();
+    }
+}
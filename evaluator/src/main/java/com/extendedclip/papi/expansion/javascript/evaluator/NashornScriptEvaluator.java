@@ -1,28 +1,151 @@
 package com.extendedclip.papi.expansion.javascript.evaluator;
 
+import org.openjdk.nashorn.api.scripting.ScriptObjectMirror;
+
 import javax.script.Bindings;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public final class NashornScriptEvaluator implements ScriptEvaluator {
 
-    private final ScriptEngine scriptEngine;
+    private static final int MAX_RESULT_DEPTH = 32;
+
+    private final NashornEnginePool pool;
     private final Map<String, Object> bindings;
+    private final Object executionLock = new Object();
+    private Thread executingThread;
+    private boolean interrupted = false;
 
-    public NashornScriptEvaluator(final ScriptEngine scriptEngine, final Map<String, Object> bindings) {
-        this.scriptEngine = scriptEngine;
+    NashornScriptEvaluator(final NashornEnginePool pool, final Map<String, Object> bindings) {
+        this.pool = pool;
         this.bindings = bindings;
     }
 
     @Override
     public Object execute(final Map<String, Object> additionalBindings, final String script) throws EvaluatorException, ScriptException {
-        final Bindings globalBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
-        globalBindings.putAll(bindings);
-        globalBindings.putAll(additionalBindings);
-        scriptEngine.setBindings(globalBindings, ScriptContext.ENGINE_SCOPE);
-        return scriptEngine.eval(script);
+        return run(additionalBindings, scope -> pool.compile(script).eval(scope.getBindings()));
+    }
+
+    @Override
+    public Object execute(final Map<String, Object> additionalBindings, final PreparedScript script) throws EvaluatorException, ScriptException {
+        if (!(script instanceof NashornPreparedScript preparedScript)) {
+            return execute(additionalBindings, script.getSource());
+        }
+        return run(additionalBindings, scope -> preparedScript.compile(pool.getScriptEngine()).eval(scope.getBindings()));
+    }
+
+    @Override
+    public <T> T execute(final Map<String, Object> additionalBindings, final PreparedScript script, final Class<T> resultType) throws EvaluatorException, ScriptException {
+        return ScriptResults.cast(toStructured(execute(additionalBindings, script), 0), resultType);
+    }
+
+    @Override
+    public Object invoke(final Map<String, Object> additionalBindings, final PreparedScript script, final Object... arguments) throws EvaluatorException, ScriptException {
+        if (!(script instanceof NashornPreparedScript preparedScript) || script.getEntryFunction() == null) {
+            return ScriptEvaluator.super.invoke(additionalBindings, script, arguments);
+        }
+        final Object result = run(additionalBindings, scope -> scope.getEntryFunction(pool.getScriptEngine(), preparedScript).call(null, arguments));
+        return ScriptObjectMirror.isUndefined(result) ? null : result;
     }
 
+    /**
+     * Nashorn has no way to stop a running script, so this interrupts the executing thread instead.
+     * That ends blocking calls such as sleeps and I/O, but not a busy loop, and closes any NIO channel the
+     * script is using. The interrupt is cleared again as soon as the script returns.
+     */
+    @Override
+    public void interrupt() {
+        synchronized (executionLock) {
+            if (executingThread != null) {
+                interrupted = true;
+                executingThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Leases an engine and runs the call in the scope of this script, with the additional bindings
+     * present only for the duration of the call.
+     */
+    private Object run(final Map<String, Object> additionalBindings, final ScriptCall call) throws ScriptException {
+        final NashornEngine engine = pool.acquire();
+        try {
+            final NashornEngine.ScriptScope scope = engine.getScope(bindings, pool.getLibraries(), pool.getScopeCapacity());
+            final Bindings scopeBindings = scope.getBindings();
+            scopeBindings.putAll(additionalBindings);
+            try {
+                return runInterruptibly(() -> call.run(scope));
+            } catch (EvaluatorException exception) {
+                throw exception;
+            } catch (RuntimeException exception) {
+                // Nashorn rethrows exceptions of Java calls made by the script as they are
+                throw new EvaluatorException("Script execution failed: " + exception.getMessage(), exception);
+            } finally {
+                for (String key : additionalBindings.keySet()) {
+                    scopeBindings.remove(key);
+                }
+            }
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    private Object runInterruptibly(final InterruptibleCall call) throws ScriptException {
+        final boolean wasInterrupted = Thread.currentThread().isInterrupted();
+        synchronized (executionLock) {
+            executingThread = Thread.currentThread();
+        }
+        try {
+            return call.run();
+        } finally {
+            synchronized (executionLock) {
+                executingThread = null;
+                if (interrupted) {
+                    // Never leak the interrupt to whatever the calling thread runs next, the server
+                    // thread included, but keep one the caller already had
+                    if (Thread.interrupted() && wasInterrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    interrupted = false;
+                }
+            }
+        }
+    }
+
+    private static Object toStructured(final Object value, final int depth) {
+        if (ScriptObjectMirror.isUndefined(value)) {
+            return null;
+        }
+        if (!(value instanceof ScriptObjectMirror mirror) || mirror.isFunction()) {
+            return value;
+        }
+        if (depth >= MAX_RESULT_DEPTH) {
+            throw new EvaluatorException("Script result is nested deeper than " + MAX_RESULT_DEPTH + " levels");
+        }
+        if (mirror.isArray()) {
+            final List<Object> list = new ArrayList<>(mirror.size());
+            for (Object item : mirror.values()) {
+                list.add(toStructured(item, depth + 1));
+            }
+            return list;
+        }
+        final Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : mirror.entrySet()) {
+            map.put(entry.getKey(), toStructured(entry.getValue(), depth + 1));
+        }
+        return map;
+    }
+
+    @FunctionalInterface
+    private interface ScriptCall {
+        Object run(NashornEngine.ScriptScope scope) throws ScriptException;
+    }
+
+    @FunctionalInterface
+    private interface InterruptibleCall {
+        Object run() throws ScriptException;
+    }
 }
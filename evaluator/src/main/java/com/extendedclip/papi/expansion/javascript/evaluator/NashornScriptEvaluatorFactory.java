@@ -5,23 +5,88 @@ import org.openjdk.nashorn.api.scripting.NashornScriptEngineFactory;
 import javax.script.ScriptEngine;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.Map;
 
 public final class NashornScriptEvaluatorFactory implements ScriptEvaluatorFactory {
-    private final ThreadLocal<ScriptEngine> engines;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final String CODE_CACHE_PROPERTY = "nashorn.persistent.code.cache";
 
-    private NashornScriptEvaluatorFactory(final NashornScriptEngineFactory engineFactory) {
-        this.engines = ThreadLocal.withInitial(() -> engineFactory.getScriptEngine("--no-java"));
+    private final NashornEnginePool enginePool;
+
+    private NashornScriptEvaluatorFactory(final NashornScriptEngineFactory engineFactory, final int poolSize, final Path codeCacheDirectory) {
+        final ScriptEngine scriptEngine;
+        if (codeCacheDirectory == null) {
+            scriptEngine = engineFactory.getScriptEngine("--no-java");
+        } else {
+            scriptEngine = createCachingEngine(engineFactory, codeCacheDirectory);
+        }
+        this.enginePool = new NashornEnginePool(scriptEngine, poolSize);
+    }
+
+    /**
+     * Nashorn only takes the cache directory from a system property, read once when the engine is created.
+     * It is set for that moment only and restored right after, so other Nashorn users in the JVM never see it.
+     * Entries are kept per Nashorn build and per source digest, so stale ones are never loaded.
+     */
+    private static ScriptEngine createCachingEngine(final NashornScriptEngineFactory engineFactory, final Path codeCacheDirectory) {
+        synchronized (NashornScriptEvaluatorFactory.class) {
+            final String previous = System.getProperty(CODE_CACHE_PROPERTY);
+            System.setProperty(CODE_CACHE_PROPERTY, codeCacheDirectory.toAbsolutePath().toString());
+            try {
+                return engineFactory.getScriptEngine("--no-java", "--persistent-code-cache");
+            } finally {
+                if (previous == null) {
+                    System.clearProperty(CODE_CACHE_PROPERTY);
+                } else {
+                    System.setProperty(CODE_CACHE_PROPERTY, previous);
+                }
+            }
+        }
     }
 
     public static ScriptEvaluatorFactory create() throws URISyntaxException, ReflectiveOperationException, NoSuchAlgorithmException, IOException {
-        return new NashornScriptEvaluatorFactory(new NashornScriptEngineFactory());
+        return create(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param poolSize the engines kept for reuse, up to as many callers beyond that get a short-lived extra engine
+     */
+    public static ScriptEvaluatorFactory create(final int poolSize) throws URISyntaxException, ReflectiveOperationException, NoSuchAlgorithmException, IOException {
+        return create(poolSize, null);
+    }
+
+    /**
+     * @param codeCacheDirectory where Nashorn keeps compiled scripts between restarts, or null to compile
+     *                           every script from source
+     */
+    public static ScriptEvaluatorFactory create(final int poolSize, final Path codeCacheDirectory) throws URISyntaxException, ReflectiveOperationException, NoSuchAlgorithmException, IOException {
+        return new NashornScriptEvaluatorFactory(new NashornScriptEngineFactory(), poolSize, codeCacheDirectory);
     }
 
     @Override
     public ScriptEvaluator create(final Map<String, Object> bindings) {
-        return new NashornScriptEvaluator(engines.get(), bindings);
+        return new NashornScriptEvaluator(enginePool, bindings);
+    }
+
+    @Override
+    public PreparedScript prepare(final String source, final String entryFunction) {
+        return new NashornPreparedScript(source, entryFunction);
+    }
+
+    @Override
+    public void preload(final Map<String, String> libraries, final Collection<PreparedScript> scripts) {
+        enginePool.setLibraries(libraries);
+        enginePool.setScriptCount(scripts.size());
+    }
+
+    public int getEngineCount() {
+        return enginePool.getSize();
     }
 
+    public int getIdleEngineCount() {
+        return enginePool.getIdleCount();
+    }
 }
@@ -0,0 +1,361 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import com.koushikdutta.quack.JavaScriptObject;
+import com.koushikdutta.quack.QuackContext;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.extendedclip.papi.expansion.javascript.evaluator.DependLoader.LOGGER;
+
+/**
+ * Keeps QuickJS contexts for reuse, so a request does not pay for building a context and its global
+ * object.
+ * <p>
+ * QuickJS checks its stack limit against the thread that created the runtime, so contexts are kept
+ * per thread and only handed back to the thread that created them. A thread without an idle context,
+ * for example one already running a script that resolves another one, gets a new context. Each thread
+ * keeps at most the configured number of idle contexts, the rest are closed when given back.
+ * <p>
+ * At most {@code maxContexts} contexts exist at once. Once there are that many, the oldest idle context
+ * of another thread makes room, and if every context is in use the caller waits for one to be given
+ * back, failing after {@link #ACQUIRE_TIMEOUT_MILLIS}.
+ * <p>
+ * Between scripts only the globals they added are removed. Changes a script makes to built-in objects,
+ * such as a new {@code String.prototype} method, stay in the context and are seen by the next script.
+ */
+final class QuickJsContextPool implements Closeable {
+    // Runs a script through an indirect eval, in the global scope, so nothing of this wrapper is visible
+    // to it, and removes whatever it left on the global object afterwards. The baseline lives in a
+    // closure the script can't reach
+    private static final String SCOPE_SOURCE = "(function () {\n" +
+            "  var globalEval = eval;\n" +
+            "  var baseline = new Set(Object.getOwnPropertyNames(globalThis));\n" +
+            "  return {\n" +
+            "    run: function (source) { return globalEval(source); },\n" +
+            "    retain: function () { baseline = new Set(Object.getOwnPropertyNames(globalThis)); },\n" +
+            "    reset: function () {\n" +
+            "      var names = Object.getOwnPropertyNames(globalThis);\n" +
+            "      for (var i = 0; i < names.length; i++) {\n" +
+            "        if (!baseline.has(names[i])) delete globalThis[names[i]];\n" +
+            "      }\n" +
+            "    }\n" +
+            "  };\n" +
+            "})()";
+    static final long ACQUIRE_TIMEOUT_MILLIS = 1000;
+
+    private final int maxIdlePerThread;
+    private final int maxContexts;
+    private final long idleTimeoutNanos;
+    // Weakly keyed, a thread that is gone does not stay in the pool until its contexts are evicted
+    private final Map<Thread, Deque<PooledContext>> idleContexts = new WeakHashMap<>();
+    // Every idle context, the least recently given back first. Holds them until they are closed
+    private final Set<PooledContext> idleOrder = new LinkedHashSet<>();
+    private final ScheduledExecutorService evictionService;
+    private volatile Map<String, String> libraries = Collections.emptyMap();
+    private int size;
+    private boolean closed;
+
+    QuickJsContextPool(final int maxIdlePerThread, final int maxContexts, final long idleTimeoutSeconds) {
+        this.maxIdlePerThread = Math.max(1, maxIdlePerThread);
+        this.maxContexts = Math.max(1, maxContexts);
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.evictionService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quickjs-eviction-thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (idleTimeoutSeconds > 0) {
+            evictionService.scheduleAtFixedRate(this::evictIdle, idleTimeoutSeconds, idleTimeoutSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Takes an idle context created by the calling thread, or creates a new one if there is none.
+     *
+     * @throws IllegalStateException if the pool is closed, or every context stayed in use for too long
+     */
+    PooledContext acquire() {
+        final Thread thread = Thread.currentThread();
+        final Map<String, String> currentLibraries = libraries;
+        final List<PooledContext> stale = new ArrayList<>();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACQUIRE_TIMEOUT_MILLIS);
+        PooledContext context = null;
+        try {
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new IllegalStateException("QuickJS context pool has been closed");
+                    }
+                    final Deque<PooledContext> idle = idleContexts.get(thread);
+                    while (idle != null && !idle.isEmpty()) {
+                        final PooledContext candidate = idle.pop();
+                        idleOrder.remove(candidate);
+                        if (candidate.libraries == currentLibraries && !candidate.interrupted) {
+                            context = candidate;
+                            break;
+                        }
+                        // Created before the libraries changed, or interrupted after it was given back
+                        stale.add(candidate);
+                        size--;
+                    }
+                    if (idle != null && idle.isEmpty()) {
+                        idleContexts.remove(thread);
+                    }
+                    if (context != null) {
+                        return context;
+                    }
+                    if (size >= maxContexts && !idleOrder.isEmpty()) {
+                        // Contexts of other threads are of no use here, the oldest one makes room
+                        final PooledContext oldest = idleOrder.iterator().next();
+                        removeIdle(oldest);
+                        stale.add(oldest);
+                        size--;
+                    }
+                    if (size < maxContexts) {
+                        size++;
+                        break;
+                    }
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IllegalStateException("All " + maxContexts + " QuickJS contexts stayed in use for " + ACQUIRE_TIMEOUT_MILLIS + "ms");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a QuickJS context", exception);
+        } finally {
+            stale.forEach(PooledContext::close);
+        }
+
+        try {
+            return new PooledContext(thread, currentLibraries);
+        } catch (RuntimeException exception) {
+            synchronized (this) {
+                size--;
+                notifyAll();
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Gives a context back, on the thread that took it. Contexts whose script was interrupted, and those
+     * beyond the idle contexts a thread keeps, are closed instead of reused.
+     */
+    void release(final PooledContext context) {
+        context.lastUsed = System.nanoTime();
+        final Thread owner = context.owner.get();
+        synchronized (this) {
+            // Waiters may use either the free slot or the idle context
+            notifyAll();
+            if (!closed && !context.interrupted && owner != null) {
+                final Deque<PooledContext> idle = idleContexts.computeIfAbsent(owner, thread -> new ArrayDeque<>());
+                if (idle.size() < maxIdlePerThread) {
+                    idle.push(context);
+                    idleOrder.add(context);
+                    return;
+                }
+            }
+            size--;
+        }
+        context.close();
+    }
+
+    // Only called while holding the pool's lock
+    private void removeIdle(final PooledContext context) {
+        idleOrder.remove(context);
+        final Thread owner = context.owner.get();
+        final Deque<PooledContext> idle = owner != null ? idleContexts.get(owner) : null;
+        if (idle != null) {
+            idle.remove(context);
+            if (idle.isEmpty()) {
+                idleContexts.remove(owner);
+            }
+        }
+    }
+
+    /**
+     * Sets the shared libraries evaluated in every new context. Idle contexts holding the previous ones
+     * are replaced when they are next taken.
+     */
+    void setLibraries(final Map<String, String> libraries) {
+        this.libraries = libraries;
+    }
+
+    synchronized int getIdleCount() {
+        return idleOrder.size();
+    }
+
+    synchronized int getSize() {
+        return size;
+    }
+
+    private void evictIdle() {
+        final List<PooledContext> evicted = new ArrayList<>();
+        final long now = System.nanoTime();
+        synchronized (this) {
+            for (PooledContext context : idleOrder) {
+                final Thread owner = context.owner.get();
+                if (owner != null && owner.isAlive() && now - context.lastUsed < idleTimeoutNanos) {
+                    continue;
+                }
+                evicted.add(context);
+            }
+            evicted.forEach(this::removeIdle);
+            size -= evicted.size();
+            if (!evicted.isEmpty()) {
+                notifyAll();
+            }
+        }
+        evicted.forEach(PooledContext::close);
+    }
+
+    @Override
+    public void close() {
+        final List<PooledContext> contexts = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            contexts.addAll(idleOrder);
+            size -= contexts.size();
+            idleOrder.clear();
+            idleContexts.clear();
+            notifyAll();
+        }
+        evictionService.shutdownNow();
+        contexts.forEach(PooledContext::close);
+    }
+
+    static final class PooledContext {
+        private final QuackContext context;
+        private final JavaScriptObject scope;
+        private final WeakReference<Thread> owner;
+        private final Map<String, String> libraries;
+        // Weakly keyed, scripts replaced by a reload drop out on their own
+        private final Map<PreparedScript, JavaScriptObject> entryFunctions = new WeakHashMap<>();
+        private Map<String, Object> installedBindings;
+        private volatile boolean interrupted;
+        private volatile long lastUsed;
+
+        private PooledContext(final Thread owner, final Map<String, String> libraries) {
+            this.owner = new WeakReference<>(owner);
+            this.libraries = libraries;
+            this.context = QuackContext.create(true);
+            this.context.setInterrupt(() -> interrupted);
+            // Evaluated before the scope records its baseline, so resets keep what the libraries declare
+            for (Map.Entry<String, String> library : libraries.entrySet()) {
+                try {
+                    context.evaluate(library.getValue(), library.getKey());
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Library " + library.getKey() + " failed to load. " + e.getMessage());
+                }
+            }
+            this.scope = context.evaluateForJavaScriptObject(SCOPE_SOURCE);
+        }
+
+        /**
+         * Static bindings are installed once per map, additional bindings are removed again
+         * together with the globals the script left behind. Maps among the additional bindings are
+         * copied into plain objects, Quack would otherwise only expose their methods to the script.
+         * Static maps stay Java objects, they are live views the script must keep reading through.
+         */
+        Object execute(final Map<String, Object> bindings, final Map<String, Object> additionalBindings, final String script) {
+            installBindings(bindings);
+            try {
+                for (Map.Entry<String, Object> entry : additionalBindings.entrySet()) {
+                    bind(entry.getKey(), entry.getValue(), true);
+                }
+                return scope.callProperty("run", script);
+            } finally {
+                if (!interrupted) {
+                    scope.callProperty("reset");
+                }
+            }
+        }
+
+        /**
+         * Calls the entry function of the given script. Its top level runs the first time the script is
+         * invoked in this context, the function is then kept here, out of reach of the global resets.
+         */
+        Object invoke(final Map<String, Object> bindings, final Map<String, Object> additionalBindings, final PreparedScript script, final Object[] arguments) {
+            installBindings(bindings);
+            try {
+                for (Map.Entry<String, Object> entry : additionalBindings.entrySet()) {
+                    bind(entry.getKey(), entry.getValue(), true);
+                }
+                JavaScriptObject entryFunction = entryFunctions.get(script);
+                if (entryFunction == null) {
+                    entryFunction = context.evaluateForJavaScriptObject(script.getModuleSource());
+                    entryFunctions.put(script, entryFunction);
+                }
+                final Object[] values = new Object[arguments.length];
+                for (int i = 0; i < arguments.length; i++) {
+                    values[i] = coerce(arguments[i], true);
+                }
+                return entryFunction.call(values);
+            } finally {
+                if (!interrupted) {
+                    scope.callProperty("reset");
+                }
+            }
+        }
+
+        private void installBindings(final Map<String, Object> bindings) {
+            if (installedBindings != bindings) {
+                for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                    bind(entry.getKey(), entry.getValue(), false);
+                }
+                scope.callProperty("retain");
+                installedBindings = bindings;
+            }
+        }
+
+        void interrupt() {
+            interrupted = true;
+        }
+
+        private void bind(final String key, final Object value, final boolean copyMaps) {
+            context.getGlobalObject().set(key, coerce(value, copyMaps));
+        }
+
+        private Object coerce(final Object value, final boolean copyMaps) {
+            if (value != null && value.getClass().isArray()) {
+                final Object[] array = (Object[]) value;
+                final JavaScriptObject jsObj = context.evaluateForJavaScriptObject("[]");
+                for (int i = 0; i < array.length; i++) {
+                    jsObj.set(i, coerce(array[i], copyMaps));
+                }
+                return jsObj;
+            }
+            if (copyMaps && value instanceof Map<?, ?> map) {
+                final JavaScriptObject jsObj = context.evaluateForJavaScriptObject("({})");
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    jsObj.set(String.valueOf(entry.getKey()), coerce(entry.getValue(), true));
+                }
+                return jsObj;
+            }
+            return context.coerceJavaToJavaScript(value);
+        }
+
+        private void close() {
+            context.close();
+        }
+    }
+}
@@ -1,45 +1,69 @@
 package com.extendedclip.papi.expansion.javascript.evaluator;
 
-import com.koushikdutta.quack.JavaScriptObject;
-import com.koushikdutta.quack.QuackContext;
-
 import java.util.Map;
+import java.util.function.Function;
 
 public final class QuickJsScriptEvaluator implements ScriptEvaluator {
+    private final QuickJsContextPool pool;
     private final Map<String, Object> bindings;
+    private final Object executionLock = new Object();
+    private QuickJsContextPool.PooledContext current;
 
-    public QuickJsScriptEvaluator(final Map<String, Object> bindings) {
+    QuickJsScriptEvaluator(final QuickJsContextPool pool, final Map<String, Object> bindings) {
+        this.pool = pool;
         this.bindings = bindings;
     }
 
     @Override
     public Object execute(final Map<String, Object> additionalBindings, final String script) throws EvaluatorException {
-        try (final QuackContext context = QuackContext.create(true)) {
-            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
-                bind(context, entry.getKey(), entry.getValue());
-            }
-            for (Map.Entry<String, Object> entry : additionalBindings.entrySet()) {
-                bind(context, entry.getKey(), entry.getValue());
-            }
-            return context.evaluate(script);
-        } catch (final Exception exception) {
-            throw new EvaluatorException("Failed to evaluate requested script.", exception);
-        }
+        return run(context -> context.execute(bindings, additionalBindings, script));
     }
 
-    private void bind(final QuackContext ctx, final String key, final Object value) {
-        ctx.getGlobalObject().set(key, coerce(ctx, value));
+    /**
+     * Keeps the entry function in the context, so the script's top level runs once per context instead
+     * of on every call.
+     */
+    @Override
+    public Object invoke(final Map<String, Object> additionalBindings, final PreparedScript script, final Object... arguments) throws EvaluatorException {
+        return run(context -> context.invoke(bindings, additionalBindings, script, arguments));
     }
 
-    private Object coerce(final QuackContext ctx, final Object value) {
-        if (value.getClass().isArray()) {
-            final Object[] array = (Object[]) value;
-            final JavaScriptObject jsObj = ctx.evaluateForJavaScriptObject("[]");
-            for (int i = 0; i < array.length; i++) {
-                jsObj.set(i, coerce(ctx, array[i]));
+    private Object run(final Function<QuickJsContextPool.PooledContext, Object> call) {
+        final QuickJsContextPool.PooledContext context;
+        try {
+            context = pool.acquire();
+        } catch (final RuntimeException exception) {
+            throw new EvaluatorException("Failed to create QuickJS context", exception);
+        }
+
+        synchronized (executionLock) {
+            current = context;
+        }
+        try {
+            return call.apply(context);
+        } catch (final EvaluatorException exception) {
+            throw exception;
+        } catch (final RuntimeException exception) {
+            throw new EvaluatorException("Failed to evaluate requested script.", exception);
+        } finally {
+            // Cleared before the context is given back, so a late interrupt can't reach an idle context
+            synchronized (executionLock) {
+                current = null;
+            }
+            pool.release(context);
+        }
+    }
+
+    /**
+     * Stops the running script the next time QuickJS polls its interrupt handler. Nothing happens if
+     * no script is running, so a late call can't hit the next script that takes the same context.
+     */
+    @Override
+    public void interrupt() {
+        synchronized (executionLock) {
+            if (current != null) {
+                current.interrupt();
             }
-            return jsObj;
         }
-        return ctx.coerceJavaToJavaScript(value);
     }
 }
@@ -4,23 +4,37 @@ import javax.script.ScriptException;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.function.Function;
 
 public final class QuickJsScriptEvaluatorFactory implements ScriptEvaluatorFactory {
     private static final int TEST_EVALUATION_RESULT = 100;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_MAX_CONTEXTS = 32;
+    private static final int IDLE_TIMEOUT_SECONDS = 60;
 
-    private QuickJsScriptEvaluatorFactory() {
+    private final QuickJsContextPool contextPool;
 
+    private QuickJsScriptEvaluatorFactory(final int poolSize, final int maxContexts) {
+        this.contextPool = new QuickJsContextPool(poolSize, maxContexts, IDLE_TIMEOUT_SECONDS);
     }
 
     public static ScriptEvaluatorFactory createWithFallback(final Function<Void, ScriptEvaluatorFactory> evaluatorFactoryProducer) {
+        return createWithFallback(DEFAULT_POOL_SIZE, DEFAULT_MAX_CONTEXTS, evaluatorFactoryProducer);
+    }
+
+    public static ScriptEvaluatorFactory createWithFallback(final int poolSize, final int maxContexts, final Function<Void, ScriptEvaluatorFactory> evaluatorFactoryProducer) {
+        ScriptEvaluatorFactory evaluatorFactory = null;
         try {
-            final ScriptEvaluatorFactory evaluatorFactory = create();
+            evaluatorFactory = create(poolSize, maxContexts);
             attemptBasicEvaluation(evaluatorFactory);
             return evaluatorFactory;
         } catch (final Exception exception) {
+            if (evaluatorFactory != null) {
+                evaluatorFactory.cleanBinaries();
+            }
             return evaluatorFactoryProducer.apply(null);
         }
     }
@@ -34,11 +48,41 @@ public final class QuickJsScriptEvaluatorFactory implements ScriptEvaluatorFacto
     }
 
     public static ScriptEvaluatorFactory create() throws URISyntaxException, ReflectiveOperationException, NoSuchAlgorithmException, IOException {
-        return new QuickJsScriptEvaluatorFactory();
+        return create(DEFAULT_POOL_SIZE);
+    }
+
+    public static ScriptEvaluatorFactory create(final int poolSize) {
+        return create(poolSize, DEFAULT_MAX_CONTEXTS);
+    }
+
+    /**
+     * @param poolSize    the most idle QuickJS contexts each thread running scripts keeps for reuse
+     * @param maxContexts the most QuickJS contexts alive at once, idle or in use
+     */
+    public static ScriptEvaluatorFactory create(final int poolSize, final int maxContexts) {
+        return new QuickJsScriptEvaluatorFactory(poolSize, maxContexts);
     }
 
     @Override
     public ScriptEvaluator create(final Map<String, Object> bindings) {
-        return new QuickJsScriptEvaluator(bindings);
+        return new QuickJsScriptEvaluator(contextPool, bindings);
+    }
+
+    @Override
+    public void preload(final Map<String, String> libraries, final Collection<PreparedScript> scripts) {
+        contextPool.setLibraries(libraries);
+    }
+
+    public int getContextCount() {
+        return contextPool.getSize();
+    }
+
+    public int getIdleContextCount() {
+        return contextPool.getIdleCount();
+    }
+
+    @Override
+    public void cleanBinaries() {
+        contextPool.close();
     }
 }
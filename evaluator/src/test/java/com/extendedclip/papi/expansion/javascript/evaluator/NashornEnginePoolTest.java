@@ -0,0 +1,50 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class NashornEnginePoolTest {
+    // Leases only hold on to the engine, the pool never runs anything on it
+    private final NashornEnginePool pool = new NashornEnginePool(null, 2);
+
+    @Test
+    public void idleEnginesAreReused() {
+        final NashornEngine engine = pool.acquire();
+        pool.release(engine);
+
+        assertSame(engine, pool.acquire());
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void extraEnginesAreCapped() {
+        final NashornEngine first = pool.acquire();
+        final NashornEngine second = pool.acquire();
+        final NashornEngine firstExtra = pool.acquire();
+        final NashornEngine secondExtra = pool.acquire();
+        assertEquals(2, pool.getSize());
+        assertEquals(2, pool.getExtraCount());
+
+        try {
+            pool.acquire();
+            fail("Expected the pool to be exhausted");
+        } catch (EvaluatorException expected) {
+            // Failed fast instead of creating another engine
+        }
+
+        // An extra engine given back is dropped and makes room for the next one
+        pool.release(firstExtra);
+        assertEquals(1, pool.getExtraCount());
+        assertNotSame(firstExtra, pool.acquire());
+        assertEquals(0, pool.getIdleCount());
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(secondExtra);
+        assertEquals(2, pool.getIdleCount());
+    }
+}
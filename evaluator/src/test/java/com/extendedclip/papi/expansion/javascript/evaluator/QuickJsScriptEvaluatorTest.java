@@ -0,0 +1,128 @@
+package com.extendedclip.papi.expansion.javascript.evaluator;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class QuickJsScriptEvaluatorTest {
+    private ScriptEvaluatorFactory factory;
+
+    @Before
+    public void setUp() {
+        try {
+            factory = QuickJsScriptEvaluatorFactory.create(2);
+            factory.create(Collections.emptyMap()).execute(Collections.emptyMap(), "1");
+        } catch (Throwable throwable) {
+            Assume.assumeNoException("QuickJS is not available on this platform", throwable);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (factory != null) {
+            factory.cleanBinaries();
+        }
+    }
+
+    @Test
+    public void placeholderValuesAreReadableAsProperties() throws Exception {
+        final Map<String, Object> bindings = Map.of("P", Map.of("player_name", "Notch"));
+        final ScriptEvaluator evaluator = factory.create(Collections.emptyMap());
+
+        assertEquals("Notch", evaluator.execute(bindings, "P[\"player_name\"]"));
+        assertEquals("Notch", evaluator.execute(bindings, "P.player_name"));
+        assertEquals(1, evaluator.execute(bindings, "Object.keys(P).length"));
+    }
+
+    @Test
+    public void argumentsAreReadableAsArray() throws Exception {
+        final Map<String, Object> bindings = Map.of("args", new String[]{"a", "b"});
+
+        assertEquals("a,b", factory.create(Collections.emptyMap()).execute(bindings, "args.join(',')"));
+    }
+
+    @Test
+    public void lateInterruptDoesNotReachTheNextEvaluation() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            final ScriptEvaluator evaluator = factory.create(Collections.emptyMap());
+            // A deadline firing while the script returns and gives its context back
+            final Thread watchdog = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    evaluator.interrupt();
+                }
+            });
+            watchdog.start();
+            try {
+                evaluator.execute(Collections.emptyMap(), "1");
+            } catch (EvaluatorException ignored) {
+                // Interrupted in time, which is fine
+            } finally {
+                watchdog.interrupt();
+                watchdog.join();
+            }
+            evaluator.interrupt();
+
+            assertEquals(2, factory.create(Collections.emptyMap()).execute(Collections.emptyMap(), "1 + 1"));
+        }
+    }
+
+    @Test
+    public void globalsAreResetAndTheContextIsReused() throws Exception {
+        final ScriptEvaluator evaluator = factory.create(Collections.emptyMap());
+
+        assertEquals(1, evaluator.execute(Collections.emptyMap(), "var leaked = 1; leaked"));
+        assertEquals("undefined", evaluator.execute(Collections.emptyMap(), "typeof leaked"));
+        assertEquals(1, ((QuickJsScriptEvaluatorFactory) factory).getContextCount());
+        assertEquals(1, ((QuickJsScriptEvaluatorFactory) factory).getIdleContextCount());
+    }
+
+    @Test
+    public void builtInChangesStayInTheContext() throws Exception {
+        final ScriptEvaluator evaluator = factory.create(Collections.emptyMap());
+
+        evaluator.execute(Collections.emptyMap(), "String.prototype.shout = function () { return this + '!'; }; 1");
+        // Documented limitation, only new globals are removed between scripts
+        assertEquals("a!", evaluator.execute(Collections.emptyMap(), "'a'.shout()"));
+    }
+
+    @Test
+    public void contextCountIsBounded() throws Exception {
+        final QuickJsContextPool pool = new QuickJsContextPool(2, 1, 0);
+        try {
+            final QuickJsContextPool.PooledContext context = pool.acquire();
+            // The only context is in use by this thread, a nested request gives up after the timeout
+            try {
+                pool.acquire();
+                fail("Expected the pool to be exhausted");
+            } catch (IllegalStateException expected) {
+                // Waited for the timeout
+            }
+            pool.release(context);
+
+            // The idle context of this thread makes room for another thread's
+            final Thread other = new Thread(() -> pool.release(pool.acquire()));
+            other.start();
+            other.join();
+            assertEquals(1, pool.getSize());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void entryFunctionKeepsItsTopLevelBetweenCalls() throws Exception {
+        final PreparedScript script = factory.prepare("var calls = 0; function main(name) { calls++; return name + calls; }", "main");
+        final ScriptEvaluator evaluator = factory.create(Collections.emptyMap());
+
+        assertEquals("a1", evaluator.invoke(Collections.emptyMap(), script, "a"));
+        assertEquals("b2", evaluator.invoke(Collections.emptyMap(), script, "b"));
+        assertEquals("undefined", evaluator.execute(Collections.emptyMap(), "typeof calls"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits placeholder arguments on the configured separator. The separator is matched literally, and
+ * seen argument strings are remembered since the same identifiers are requested over and over. Once the
+ * cache is full it is emptied, so lookups never lock and a stream of unique arguments stays bounded.
+ */
+public final class ArgumentParser {
+    private static final int CACHE_SIZE = 1024;
+
+    private final String separator;
+    private final Map<String, String[]> cache = new ConcurrentHashMap<>();
+
+    public ArgumentParser(@NotNull final String separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * @return the split arguments; the returned array is shared and must not be modified
+     */
+    @NotNull
+    public String[] parse(@NotNull final String arguments) {
+        final String[] cached = cache.get(arguments);
+        if (cached != null) {
+            return cached;
+        }
+
+        final String[] parsed = split(arguments);
+        if (cache.size() >= CACHE_SIZE) {
+            cache.clear();
+        }
+        cache.put(arguments, parsed);
+        return parsed;
+    }
+
+    // Same result as String#split with a literal separator, trailing empty strings are dropped
+    private String[] split(final String arguments) {
+        int index = separator.isEmpty() ? -1 : arguments.indexOf(separator);
+        if (index < 0) {
+            return new String[]{arguments};
+        }
+
+        final List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (index >= 0) {
+            parts.add(arguments.substring(start, index));
+            start = index + separator.length();
+            index = arguments.indexOf(separator, start);
+        }
+        parts.add(arguments.substring(start));
+
+        int size = parts.size();
+        while (size > 0 && parts.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return parts.subList(0, size).toArray(new String[0]);
+    }
+}
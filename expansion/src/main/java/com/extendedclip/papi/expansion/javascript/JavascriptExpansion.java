@@ -28,13 +28,16 @@ import com.extendedclip.papi.expansion.javascript.config.YamlScriptConfiguration
 import com.extendedclip.papi.expansion.javascript.evaluator.*;
 import com.extendedclip.papi.expansion.javascript.evaluator.util.DependUtil;
 import com.extendedclip.papi.expansion.javascript.script.ConfigurationScriptLoader;
+import com.extendedclip.papi.expansion.javascript.script.ScriptCodeCache;
 import com.extendedclip.papi.expansion.javascript.script.ScriptLoader;
 import com.extendedclip.papi.expansion.javascript.script.ScriptRegistry;
+import com.extendedclip.papi.expansion.javascript.script.ScriptWatchdog;
 import me.clip.placeholderapi.expansion.Cacheable;
 import me.clip.placeholderapi.expansion.Configurable;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
@@ -43,8 +46,13 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 public class JavascriptExpansion extends PlaceholderExpansion implements Cacheable, Configurable {
@@ -59,13 +67,19 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
     private final GitScriptManager scriptManager = GitScriptManager.createDefault(getPlaceholderAPI());
 
     private String argumentSeparator = "";
+    private String engineName = "";
+    private ArgumentParser argumentParser;
     private ScriptLoader loader;
     private ScriptEvaluatorFactory scriptEvaluatorFactory;
     private CommandRegistrar commandRegistrar;
+    private ExecutorService asyncExecutor;
+    private ScriptEvaluationExecutor evaluationExecutor;
+    private long evaluationWaitMillis;
+    private ScriptWatchdog watchdog;
 
-    private static ScriptEvaluatorFactory createNashornEvaluatorFactory() {
+    private static ScriptEvaluatorFactory createNashornEvaluatorFactory(final int poolSize, final Path codeCacheDirectory) {
         try {
-            return NashornScriptEvaluatorFactory.create();
+            return NashornScriptEvaluatorFactory.create(poolSize, codeCacheDirectory);
         } catch (URISyntaxException | ReflectiveOperationException | NoSuchAlgorithmException | IOException exception) {
             throw new RuntimeException("Failed to create fallback evaluator: Nashorn", exception); // Unrecoverable
         }
@@ -96,10 +110,22 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
             argumentSeparator = ",";
             ExpansionUtils.warnLog("Underscore character will not be allowed for splitting. Defaulting to ',' for this", null);
         }
+        argumentParser = new ArgumentParser(argumentSeparator);
+
+        final int asyncThreads = Math.max(1, getInt("async_threads", 2));
+        final AtomicInteger asyncThreadCount = new AtomicInteger();
+        asyncExecutor = Executors.newFixedThreadPool(asyncThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "javascript-async-" + asyncThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog = new ScriptWatchdog();
 
         int v8_pool_size = getInt("v8_pool_size", 10);
+        int nashornPoolSize = getInt("nashorn_pool_size", 4);
         ScriptEngine scriptEngine = ScriptEngine.fromString(getString("js_engine", "quickjs"));
         ExpansionUtils.infoLog("Using " + scriptEngine + " Engine");
+        engineName = scriptEngine.getEngineName();
         ExpansionUtils.warnLog("Loading/downloading dependencies is about to begin. During this time, if the server lags, this is normal.");
         ExpansionUtils.warnLog("If the server is unresponsive for a long time, check that you can connect to central smoothly. You may need to change the mirror in the configuration file.");
         ExpansionUtils.warnLog("If you experience any issues, please report them at https://github.com/404Setup/PlaceholderAPI-JavaScriptZ/issues");
@@ -108,21 +134,27 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
 
         boolean v8UseGCBeforeEngineClose = getBoolean("v8_use_gc_before_engine_close", false);
 
+        final File dataFolder = getPlaceholderAPI().getDataFolder();
+        final Path scriptDirectoryPath = dataFolder.toPath().resolve("javascripts");
+        final Path codeCachePath = getBoolean("persistent_code_cache", true) ? scriptDirectoryPath.resolve(".cache") : null;
+        final Path nashornCodeCachePath = codeCachePath != null ? codeCachePath.resolve("nashorn") : null;
+
         switch (scriptEngine) {
             case QUICKJS:
                 DependLoader.loadQuickJs();
-                this.scriptEvaluatorFactory = QuickJsScriptEvaluatorFactory.createWithFallback(i -> {
+                this.scriptEvaluatorFactory = QuickJsScriptEvaluatorFactory.createWithFallback(getInt("quickjs_pool_size", 4), getInt("quickjs_max_contexts", 32), i -> {
                     getPlaceholderAPI().getLogger().log(Level.WARNING, "Failed to use QuickJS Engine. Falling back to Nashorn");
-                    return createNashornEvaluatorFactory();
+                    engineName = ScriptEngine.NASHORN.getEngineName();
+                    return createNashornEvaluatorFactory(nashornPoolSize, nashornCodeCachePath);
                 });
                 break;
             case NASHORN:
                 DependLoader.loadNashorn();
-                this.scriptEvaluatorFactory = createNashornEvaluatorFactory();
+                this.scriptEvaluatorFactory = createNashornEvaluatorFactory(nashornPoolSize, nashornCodeCachePath);
                 break;
             case V8:
                 DependLoader.loadV8(false);
-                this.scriptEvaluatorFactory = JavetScriptEvaluatorFactory.create(v8UseGCBeforeEngineClose, v8_pool_size);
+                this.scriptEvaluatorFactory = JavetScriptEvaluatorFactory.create(v8UseGCBeforeEngineClose, v8_pool_size, getBoolean("v8_startup_snapshot", false));
                 break;
             case V8Node:
                 DependLoader.loadV8(true);
@@ -132,10 +164,12 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
                 throw new IllegalStateException("Unexpected value: " + scriptEngine);
         }
 
+        final int evaluationThreads = getInt("evaluation_threads", 0);
+        evaluationExecutor = evaluationThreads > 0 ? new ScriptEvaluationExecutor(scriptEvaluatorFactory, evaluationThreads) : null;
+        evaluationWaitMillis = Math.max(1, getLong("evaluation_wait_millis", 1000));
+
         final HeaderWriter headerWriter = HeaderWriter.fromJar(SELF_JAR_URL);
 
-        final File dataFolder = getPlaceholderAPI().getDataFolder();
-        final Path scriptDirectoryPath = dataFolder.toPath().resolve("javascripts");
         try {
             Files.createDirectories(scriptDirectoryPath);
         } catch (IOException exception) {
@@ -144,7 +178,12 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
         final File configFile = new File(dataFolder, "javascript_placeholders.yml");
         final ScriptConfiguration scriptConfiguration = new YamlScriptConfiguration(configFile, headerWriter, scriptDirectoryPath);
         final JavascriptPlaceholderFactory placeholderFactory = new SimpleJavascriptPlaceholderFactory(this, scriptEvaluatorFactory);
-        this.loader = new ConfigurationScriptLoader(registry, scriptConfiguration, placeholderFactory);
+        final Path libraryDirectoryPath = scriptDirectoryPath.resolve(getString("library_folder", "lib"));
+        final String codeCacheVersion = scriptEvaluatorFactory.getCodeCacheVersion();
+        final ScriptCodeCache codeCache = codeCachePath != null && codeCacheVersion != null
+                ? new ScriptCodeCache(codeCachePath.resolve(engineName), codeCacheVersion)
+                : null;
+        this.loader = new ConfigurationScriptLoader(registry, scriptConfiguration, placeholderFactory, libraryDirectoryPath, codeCache);
         try {
             this.commandRegistrar = new CommandRegistrar(scriptManager, placeholderFactory, scriptConfiguration, registry, loader, this);
         } catch (ReflectiveOperationException e) {
@@ -171,28 +210,86 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
     public void clear() {
         commandRegistrar.unregister();
         loader.clear();
+        asyncExecutor.shutdownNow();
+        if (evaluationExecutor != null) {
+            evaluationExecutor.close();
+        }
+        watchdog.shutdown();
         scriptEvaluatorFactory.cleanBinaries();
     }
 
+    /**
+     * @return the executor running scripts configured with {@code async: true}
+     */
+    @NotNull
+    public ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @return the workers scripts are evaluated on, or null if {@code evaluation_threads} is off
+     */
+    @Nullable
+    public ScriptEvaluationExecutor getEvaluationExecutor() {
+        return evaluationExecutor;
+    }
+
+    /**
+     * @return how long a caller waits for an evaluation worker, on top of the script's own timeout
+     */
+    public long getEvaluationWaitMillis() {
+        return evaluationWaitMillis;
+    }
+
+    /**
+     * @return the name of the engine in use, as used by {@code js_engine}
+     */
+    @NotNull
+    public String getEngineName() {
+        return engineName;
+    }
+
+    @NotNull
+    public ScriptWatchdog getWatchdog() {
+        return watchdog;
+    }
+
     @Override
     public String onRequest(OfflinePlayer player, @NotNull String identifier) {
         if (player == null) {
             return "";
         }
 
-        for (JavascriptPlaceholder script : registry.getAllPlaceholders()) {
-            if (identifier.startsWith(script.getIdentifier() + "_")) {
-                identifier = identifier.replaceFirst(script.getIdentifier() + "_", "");
+        final ScriptRegistry.Match match = registry.match(identifier);
+        if (match == null) {
+            return "";
+        }
+
+        final JavascriptPlaceholder script = match.getPlaceholder();
+        final String arguments = match.getArguments();
+        if (arguments == null) {
+            return script.evaluate(player);
+        }
 
-                return !identifier.contains(argumentSeparator) ? script.evaluate(player, identifier) : script.evaluate(player, identifier.split(argumentSeparator));
-            }
+        return script.evaluate(player, argumentParser.parse(arguments));
+    }
 
-            if (identifier.equalsIgnoreCase(script.getIdentifier())) {
-                return script.evaluate(player);
-            }
+    /**
+     * Resolves an identifier, as passed to {@link #onRequest}, for many players at once.
+     *
+     * @return the results in the order of the given players, or an empty map if no script matches
+     */
+    @NotNull
+    public Map<OfflinePlayer, String> evaluateAll(@NotNull final String identifier, @NotNull final Collection<? extends OfflinePlayer> players) {
+        final ScriptRegistry.Match match = registry.match(identifier);
+        if (match == null) {
+            return Collections.emptyMap();
         }
 
-        return "";
+        final String arguments = match.getArguments();
+        return arguments == null
+                ? match.getPlaceholder().evaluateAll(players)
+                : match.getPlaceholder().evaluateAll(players, argumentParser.parse(arguments));
     }
 
     @Override
@@ -205,6 +302,15 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
         defaults.put("js_engine", ScriptEngine.QUICKJS.toString());
         defaults.put("v8_use_gc_before_engine_close", false);
         defaults.put("v8_pool_size", 10);
+        defaults.put("v8_startup_snapshot", false);
+        defaults.put("library_folder", "lib");
+        defaults.put("persistent_code_cache", true);
+        defaults.put("quickjs_pool_size", 4);
+        defaults.put("quickjs_max_contexts", 32);
+        defaults.put("nashorn_pool_size", 4);
+        defaults.put("async_threads", 2);
+        defaults.put("evaluation_threads", 0);
+        defaults.put("evaluation_wait_millis", 1000);
         defaults.put("mirror", "https://repo.maven.apache.org/maven2/");
         return defaults;
     }
@@ -21,34 +21,71 @@
 package com.extendedclip.papi.expansion.javascript;
 
 
+import com.extendedclip.papi.expansion.javascript.config.CacheOptions;
+import com.extendedclip.papi.expansion.javascript.config.ScriptOptions;
+import com.extendedclip.papi.expansion.javascript.evaluator.EvaluatorException;
+import com.extendedclip.papi.expansion.javascript.evaluator.PreparedScript;
+import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluationExecutor;
 import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluator;
 import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.script.AsyncResultCache;
+import com.extendedclip.papi.expansion.javascript.script.ResultCache;
 import com.extendedclip.papi.expansion.javascript.script.ScriptData;
+import com.extendedclip.papi.expansion.javascript.script.ScriptTemplate;
+import com.extendedclip.papi.expansion.javascript.script.ScriptWatchdog;
 import com.extendedclip.papi.expansion.javascript.script.data.PersistableData;
 import com.extendedclip.papi.expansion.javascript.script.data.YmlPersistableData;
+import com.extendedclip.papi.expansion.javascript.script.stats.ScriptEvaluationEvent;
+import com.extendedclip.papi.expansion.javascript.script.stats.ScriptStats;
 import me.clip.placeholderapi.PlaceholderAPI;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.script.ScriptException;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 public final class JavascriptPlaceholder {
+    private static final String SCRIPT_ERROR = "Script error (check console)";
+    private static final Object FAILED = new Object();
+    private static final Object TIMED_OUT = new Object();
+
     private final String identifier;
-    private final String script;
+    private final ScriptTemplate template;
     private final PersistableData persistableData;
-    private final Pattern pattern = Pattern.compile("//.*|/\\*[\\S\\s]*?\\*/|%([^%]+)%");
     private final ScriptEvaluatorFactory evaluatorFactory;
     private final JavascriptExpansion expansion;
+    private final PreparedScript preparedScript;
+    private final ResultCache resultCache;
+    private final AsyncResultCache asyncResults;
+    private final String pendingResult;
+    private final Map<String, Object> staticBindings;
+    private final long timeoutMillis;
+    private final String timeoutResult;
+    private final ScriptStats stats = new ScriptStats();
 
     public JavascriptPlaceholder(@NotNull final String identifier, @NotNull final String script, @NotNull final ScriptEvaluatorFactory evaluatorFactory, @NotNull final JavascriptExpansion expansion) {
+        this(identifier, script, ScriptOptions.DEFAULT, evaluatorFactory, expansion);
+    }
+
+    public JavascriptPlaceholder(@NotNull final String identifier, @NotNull final String script, @NotNull final ScriptOptions options, @NotNull final ScriptEvaluatorFactory evaluatorFactory, @NotNull final JavascriptExpansion expansion) {
         final Path dataFilePath = expansion.getPlaceholderAPI().getDataFolder()
                 .toPath()
                 .resolve("javascripts")
@@ -62,84 +99,443 @@ public final class JavascriptPlaceholder {
             throw new RuntimeException(exception);
         }
         this.identifier = identifier;
-        this.script = script;
+        this.template = options.getPlaceholderMode() == ScriptOptions.PlaceholderMode.BINDINGS
+                ? ScriptTemplate.parseBindings(script)
+                : ScriptTemplate.parse(script);
         this.evaluatorFactory = evaluatorFactory;
         this.expansion = expansion;
+        String entryFunction = options.getEntryFunction();
+        if (entryFunction != null && !template.isConstant()) {
+            ExpansionUtils.warnLog("Script '" + identifier + "' uses entry_function together with inner placeholders in its source. Use 'placeholder_mode: bindings' to enable the entry function");
+            entryFunction = null;
+        }
+        // Scripts whose text does not depend on the player are compiled once up front
+        this.preparedScript = template.isConstant() ? evaluatorFactory.prepare(script, entryFunction) : null;
+        final CacheOptions cacheOptions = options.getCacheOptions();
+        this.resultCache = cacheOptions != null ? new ResultCache(cacheOptions) : null;
+        this.asyncResults = options.isAsync() ? new AsyncResultCache(options.getMaxStalenessMillis()) : null;
+        this.pendingResult = options.getPendingResult();
+        this.staticBindings = createStaticBindings();
+        this.timeoutMillis = options.getTimeoutMillis();
+        this.timeoutResult = options.getTimeoutResult();
     }
 
     public String getIdentifier() {
         return identifier;
     }
 
+    public ScriptStats getStats() {
+        return stats;
+    }
+
     public String evaluate(final OfflinePlayer player, final String... args) {
-        // A checker to deny all placeholders inside comment codes
-        final Matcher matcher = pattern.matcher(script);
-        final StringBuilder buffer = new StringBuilder();
-        while (matcher.find()) {
-            final String matched = matcher.group(0);
-            if (!matched.startsWith("%") || matched.startsWith("/*") || matched.startsWith("//")) continue;
-            matcher.appendReplacement(buffer, PlaceholderAPI.setPlaceholders(player, matched));
-        }
-        matcher.appendTail(buffer);
-        final String parsedScript = buffer.toString();
-        try {
-            final int length;
-            if (args != null) {
-                length = args.length;
-            } else {
-                length = 0;
+        final ScriptEvaluationEvent event = new ScriptEvaluationEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        final String result = asyncResults != null ? evaluateAsync(player, args) : evaluateNow(player, args);
+        stats.recordCall(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.identifier = identifier;
+            event.engine = expansion.getEngineName();
+            event.resultLength = result.length();
+            event.error = result == SCRIPT_ERROR;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Answers with the last result and refreshes it in the background, so the calling thread never
+     * waits for the script.
+     */
+    private String evaluateAsync(final OfflinePlayer player, final String... args) {
+        final AsyncResultCache.Entry entry = asyncResults.get(ResultCache.toKey(player, args));
+        if (entry.claimRefresh()) {
+            final ScriptEvaluationExecutor executor = expansion.getEvaluationExecutor();
+            try {
+                if (executor != null) {
+                    executor.submit(identifier, factory -> execute(factory, player, args))
+                            .whenComplete((result, throwable) -> completeRefresh(entry, result));
+                } else {
+                    expansion.getAsyncExecutor().execute(() -> {
+                        String result = null;
+                        try {
+                            result = execute(evaluatorFactory, player, args);
+                        } finally {
+                            completeRefresh(entry, result);
+                        }
+                    });
+                }
+            } catch (RejectedExecutionException exception) {
+                entry.complete(null);
             }
-            final String[] arguments = new String[length];
+        }
+        final String value = entry.getValue();
+        return value != null ? value : pendingResult;
+    }
+
+    private static void completeRefresh(final AsyncResultCache.Entry entry, final String result) {
+        // A failure keeps the previous result, or shows the error until the next refresh
+        entry.complete(result == null && entry.getValue() == null ? SCRIPT_ERROR : result);
+    }
+
+    private String evaluateNow(final OfflinePlayer player, final String... args) {
+        if (resultCache == null) {
+            final String result = executeNow(player, args);
+            return result != null ? result : SCRIPT_ERROR;
+        }
+
+        final String key = resultCache.createKey(player, args);
+        final String cached = resultCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final String result = executeNow(player, args);
+        if (result == null) {
+            return SCRIPT_ERROR;
+        }
+        resultCache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Evaluates this placeholder for all given players on a single evaluator, so the engine lease and
+     * the shared bindings are paid once per batch instead of once per player.
+     *
+     * @return the results in the order of the given players
+     */
+    public Map<OfflinePlayer, String> evaluateAll(final Collection<? extends OfflinePlayer> players, final String... args) {
+        final Map<OfflinePlayer, String> results = new LinkedHashMap<>();
+        if (asyncResults != null) {
+            for (OfflinePlayer player : players) {
+                results.put(player, evaluateAsync(player, args));
+            }
+            return results;
+        }
 
-            for (int i = 0; i < length; i++) {
-                if (args[i] == null || args[i].isEmpty()) {
-                    continue;
+        final List<OfflinePlayer> pending = new ArrayList<>(players.size());
+        for (OfflinePlayer player : players) {
+            final String cached = resultCache != null ? resultCache.get(resultCache.createKey(player, args)) : null;
+            results.put(player, cached);
+            if (cached == null) {
+                pending.add(player);
+            }
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+
+        // Nested placeholders may be other scripts, they are resolved before this one leases an engine
+        final List<Invocation> invocations = new ArrayList<>(pending.size());
+        for (OfflinePlayer player : pending) {
+            invocations.add(resolve(player, args));
+        }
+
+        final Object[] values = executeAllNow(pending, invocations);
+        for (int i = 0; i < pending.size(); i++) {
+            final OfflinePlayer player = pending.get(i);
+            storeResult(results, player, args, toResult(player, values[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Runs the batch on the evaluation workers when there are any, otherwise on the calling thread.
+     *
+     * @return the raw script results, in the order of the given players
+     */
+    private Object[] executeAllNow(final List<OfflinePlayer> players, final List<Invocation> invocations) {
+        final ScriptEvaluationExecutor executor = expansion.getEvaluationExecutor();
+        if (executor == null || executor.isWorkerThread()) {
+            return executeAll(evaluatorFactory, players, invocations);
+        }
+        final Object value = await(executor, factory -> executeAll(factory, players, invocations), timeoutMillis * players.size());
+        if (value instanceof Object[] batch) {
+            return batch;
+        }
+        // The batch failed or took too long as a whole
+        final Object[] values = new Object[players.size()];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    /**
+     * @return the raw script results, in the order of the given players
+     */
+    private Object[] executeAll(final ScriptEvaluatorFactory factory, final List<OfflinePlayer> players, final List<Invocation> invocations) {
+        final Object[] values = new Object[players.size()];
+        final ScriptEvaluator evaluator = createEvaluator(factory);
+        if (evaluator == null) {
+            Arrays.fill(values, FAILED);
+            return values;
+        }
+        try {
+            // Deadlines are per evaluation, so scripts with a timeout are run one by one
+            if (preparedScript != null && preparedScript.getEntryFunction() == null && timeoutMillis == 0) {
+                final List<Map<String, Object>> bindings = new ArrayList<>(players.size());
+                for (Invocation invocation : invocations) {
+                    bindings.add(invocation.bindings);
+                }
+                final boolean[] failed = new boolean[players.size()];
+                final long start = System.nanoTime();
+                final List<Object> batch = evaluator.executeAll(bindings, preparedScript, (exception, index) -> {
+                    failed[index] = true;
+                    stats.recordError();
+                    ExpansionUtils.errorLog("An error occurred while executing the script '" + identifier + "'", exception);
+                });
+                // The batch runs as one call, an average per player would skew the per-call percentiles
+                stats.recordBatch(System.nanoTime() - start, players.size());
+                for (int i = 0; i < players.size(); i++) {
+                    values[i] = failed[i] ? FAILED : batch.get(i);
+                }
+            } else {
+                for (int i = 0; i < players.size(); i++) {
+                    values[i] = run(evaluator, players.get(i), invocations.get(i));
                 }
-                arguments[i] = PlaceholderAPI.setBracketPlaceholders(player, args[i]);
             }
+        } finally {
+            closeEvaluator(evaluator);
+        }
+        return values;
+    }
+
+    private void storeResult(final Map<OfflinePlayer, String> results, final OfflinePlayer player, final String[] args, final String result) {
+        if (result == null) {
+            results.put(player, SCRIPT_ERROR);
+            return;
+        }
+        if (resultCache != null) {
+            resultCache.put(resultCache.createKey(player, args), result);
+        }
+        results.put(player, result);
+    }
+
+    /**
+     * Runs the script on the evaluation workers when there are any, otherwise on the calling thread.
+     * Placeholders in the arguments and the result are resolved on the calling thread either way.
+     *
+     * @return the script result, or null if the script failed
+     */
+    private String executeNow(final OfflinePlayer player, final String... args) {
+        final ScriptEvaluationExecutor executor = expansion.getEvaluationExecutor();
+        if (executor == null || executor.isWorkerThread()) {
+            // A worker evaluating nested placeholders runs them right away instead of waiting on itself
+            return execute(evaluatorFactory, player, args);
+        }
+        final Invocation invocation = resolve(player, args);
+        return toResult(player, await(executor, factory -> executeResolved(factory, player, invocation), timeoutMillis));
+    }
+
+    /**
+     * Waits for a task queued on the evaluation workers, at most the configured wait on top of the given
+     * script time. The task is cancelled once the caller stops waiting for it.
+     *
+     * @return the task's result, {@link #FAILED} or {@link #TIMED_OUT}
+     */
+    private Object await(final ScriptEvaluationExecutor executor, final Function<ScriptEvaluatorFactory, Object> task, final long scriptMillis) {
+        final CompletableFuture<Object> future;
+        try {
+            future = executor.submit(identifier, task);
+        } catch (RejectedExecutionException exception) {
+            // Closing down, the calling thread still has the regular pool
+            return task.apply(evaluatorFactory);
+        }
+        final long waitMillis = expansion.getEvaluationWaitMillis() + scriptMillis;
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            future.cancel(false);
+            stats.recordTimeout();
+            ExpansionUtils.warnLog("Script '" + identifier + "' waited longer than " + waitMillis + "ms for an evaluation worker");
+            return TIMED_OUT;
+        } catch (InterruptedException exception) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            return FAILED;
+        } catch (ExecutionException exception) {
+            stats.recordError();
+            ExpansionUtils.errorLog("An error occurred while executing the script '" + identifier + "'", exception.getCause());
+            return FAILED;
+        }
+    }
 
-            final Map<String, Object> defaultBindings = prepareDefaultBindings();
+    /**
+     * @return the script result, or null if the script failed
+     */
+    private String execute(final ScriptEvaluatorFactory factory, final OfflinePlayer player, final String... args) {
+        // Nested placeholders may be other scripts, they are resolved before this one leases an engine
+        final Invocation invocation = resolve(player, args);
+        return toResult(player, executeResolved(factory, player, invocation));
+    }
 
-            final ScriptEvaluator evaluator = evaluatorFactory.create(defaultBindings);
+    /**
+     * @return the raw script result, {@link #FAILED} or {@link #TIMED_OUT}
+     */
+    private Object executeResolved(final ScriptEvaluatorFactory factory, final OfflinePlayer player, final Invocation invocation) {
+        final ScriptEvaluator evaluator = createEvaluator(factory);
+        if (evaluator == null) {
+            return FAILED;
+        }
+        try {
+            return run(evaluator, player, invocation);
+        } finally {
+            closeEvaluator(evaluator);
+        }
+    }
+
+    /**
+     * Resolves everything the script needs from the player, which may evaluate other placeholders.
+     */
+    private Invocation resolve(final OfflinePlayer player, final String[] args) {
+        final long start = System.nanoTime();
+        final String[] arguments = parseArguments(player, args);
+        final String parsedScript = preparedScript == null ? template.render(player) : null;
+        final Map<String, Object> placeholderValues = template.isBound() ? template.resolve(player) : null;
+        final long resolved = System.nanoTime();
+        stats.record(ScriptStats.Phase.PLACEHOLDERS, resolved - start);
+        final Map<String, Object> bindings = createBindings(player, arguments, placeholderValues);
+        stats.record(ScriptStats.Phase.BINDINGS, System.nanoTime() - resolved);
+        return new Invocation(arguments, parsedScript, bindings);
+    }
 
-            final Map<String, Object> additionalBindings = new HashMap<>();
-            additionalBindings.put("args", arguments);
-            if (player != null && player.isOnline()) {
-                additionalBindings.put("BukkitPlayer", player.getPlayer());
-                additionalBindings.put("Player", player.getPlayer());
+    /**
+     * @return the raw script result, {@link #FAILED} or {@link #TIMED_OUT}
+     */
+    private Object run(final ScriptEvaluator evaluator, final OfflinePlayer player, final Invocation invocation) {
+        final long start = System.nanoTime();
+        final ScriptWatchdog.Deadline deadline = timeoutMillis > 0 ? expansion.getWatchdog().start(evaluator, timeoutMillis) : null;
+        try {
+            final Object result;
+            if (preparedScript == null) {
+                result = evaluator.execute(invocation.bindings, invocation.parsedScript);
+            } else if (preparedScript.getEntryFunction() != null) {
+                result = evaluator.invoke(invocation.bindings, preparedScript, invocation.arguments, player);
+            } else {
+                result = evaluator.execute(invocation.bindings, preparedScript);
             }
-            additionalBindings.put("OfflinePlayer", player);
+            stats.record(ScriptStats.Phase.EXECUTE, System.nanoTime() - start);
+            return result;
+        } catch (EvaluatorException | ScriptException exception) {
+            if (deadline != null && deadline.isExpired()) {
+                stats.recordTimeout();
+                ExpansionUtils.warnLog("Script '" + identifier + "' ran longer than " + timeoutMillis + "ms and was interrupted");
+                return TIMED_OUT;
+            }
+            stats.recordError();
+            if (exception.getCause() instanceof ArrayIndexOutOfBoundsException outOfBounds) {
+                ExpansionUtils.errorLog("Argument out of bound while executing script '" + identifier + "':\n\t" + outOfBounds.getMessage(), null);
+            } else {
+                ExpansionUtils.errorLog("An error occurred while executing the script '" + identifier + "'", exception);
+            }
+        } finally {
+            if (deadline != null) {
+                deadline.cancel();
+            }
+        }
+        return FAILED;
+    }
+
+    private ScriptEvaluator createEvaluator(final ScriptEvaluatorFactory factory) {
+        final long start = System.nanoTime();
+        try {
+            return factory.create(staticBindings);
+        } catch (RuntimeException exception) {
+            stats.recordError();
+            ExpansionUtils.errorLog("An error occurred while preparing the script '" + identifier + "'", exception);
+            return null;
+        } finally {
+            stats.record(ScriptStats.Phase.LEASE, System.nanoTime() - start);
+        }
+    }
+
+    private void closeEvaluator(final ScriptEvaluator evaluator) {
+        if (evaluator instanceof Closeable closeable) {
             try {
-                Object result = evaluator.execute(additionalBindings, parsedScript);
-                if (evaluator instanceof Closeable closeable) {
-                    closeable.close();
-                }
-                return result != null ? PlaceholderAPI.setBracketPlaceholders(player, result.toString()) : "";
-            } catch (RuntimeException |
-                     ScriptException exception) { // todo:: prepare specific exception and catch that instead of all runtime exceptions
-                ExpansionUtils.errorLog("An error occurred while executing the script '" + identifier, exception);
+                closeable.close();
             } catch (IOException e) {
                 ExpansionUtils.errorLog("Error sent during execution engine recycling: ", e);
             }
-        } catch (ArrayIndexOutOfBoundsException ex) {
-            ExpansionUtils.errorLog("Argument out of bound while executing script '" + identifier + "':\n\t" + ex.getMessage(), null);
         }
-        return "Script error (check console)";
     }
 
-    private Map<String, Object> prepareDefaultBindings() {
+    private String[] parseArguments(final OfflinePlayer player, final String[] args) {
+        // Copied because the given arguments may be shared between requests
+        final String[] arguments = args != null ? args.clone() : new String[0];
+
+        for (int i = 0; i < arguments.length; i++) {
+            final String argument = arguments[i];
+            if (argument == null || argument.isEmpty()) {
+                arguments[i] = null;
+            } else if (argument.indexOf('{') >= 0) {
+                arguments[i] = PlaceholderAPI.setBracketPlaceholders(player, argument);
+            }
+        }
+        return arguments;
+    }
+
+    private Map<String, Object> createBindings(final OfflinePlayer player, final String[] arguments, final Map<String, Object> placeholderValues) {
+        final Map<String, Object> additionalBindings = new HashMap<>();
+        additionalBindings.put("args", arguments);
+        if (player != null && player.isOnline()) {
+            additionalBindings.put("BukkitPlayer", player.getPlayer());
+            additionalBindings.put("Player", player.getPlayer());
+        }
+        additionalBindings.put("OfflinePlayer", player);
+        if (placeholderValues != null) {
+            additionalBindings.put(ScriptTemplate.PLACEHOLDER_BINDING, placeholderValues);
+        }
+        return additionalBindings;
+    }
+
+    /**
+     * Parses the placeholders of a result, only called once the engine has been given back.
+     *
+     * @return the text to show, or null if the script failed
+     */
+    private String toResult(final OfflinePlayer player, final Object result) {
+        if (result == FAILED) {
+            return null;
+        }
+        if (result == TIMED_OUT) {
+            return timeoutResult;
+        }
+        if (result == null) {
+            return "";
+        }
+        final long start = System.nanoTime();
+        final String text = result.toString();
+        final long converted = System.nanoTime();
+        stats.record(ScriptStats.Phase.CONVERSION, converted - start);
+        final String parsed = PlaceholderAPI.setBracketPlaceholders(player, text);
+        stats.record(ScriptStats.Phase.RESULT_PARSING, System.nanoTime() - converted);
+        return parsed;
+    }
+
+    // Created once, the same instance lets the evaluator factory skip reinstalling it
+    private Map<String, Object> createStaticBindings() {
         final Map<String, Object> bindings = new HashMap<>();
         bindings.put("Data", persistableData.getScriptData());
+        // A live view, engines read the current values through it
         bindings.put("DataVar", persistableData.getScriptData().getData());
         bindings.put("BukkitServer", Bukkit.getServer());
         bindings.put("Expansion", expansion);
         bindings.put("Placeholder", this);
         bindings.put("PlaceholderAPI", PlaceholderAPI.class);
-        return bindings;
+        return Collections.unmodifiableMap(bindings);
     }
 
     public String getScript() {
-        return script;
+        return template.getSource();
+    }
+
+    /**
+     * @return the script compiled up front, or null if its source depends on the player
+     */
+    @Nullable
+    public PreparedScript getPreparedScript() {
+        return preparedScript;
     }
 
     public ScriptData getData() {
@@ -153,4 +549,28 @@ public final class JavascriptPlaceholder {
     public PersistableData getPersistableData() {
         return persistableData;
     }
+
+    public void close() {
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+        if (asyncResults != null) {
+            asyncResults.clear();
+        }
+        if (preparedScript != null) {
+            preparedScript.close();
+        }
+    }
+
+    private static final class Invocation {
+        private final String[] arguments;
+        private final String parsedScript;
+        private final Map<String, Object> bindings;
+
+        private Invocation(final String[] arguments, final String parsedScript, final Map<String, Object> bindings) {
+            this.arguments = arguments;
+            this.parsedScript = parsedScript;
+            this.bindings = bindings;
+        }
+    }
 }
@@ -1,5 +1,19 @@
 package com.extendedclip.papi.expansion.javascript;
 
+import com.extendedclip.papi.expansion.javascript.config.ScriptOptions;
+
+import java.util.Collection;
+import java.util.Map;
+
 public interface JavascriptPlaceholderFactory {
-    JavascriptPlaceholder create(final String identifier, final String script);
+    JavascriptPlaceholder create(final String identifier, final String script, final ScriptOptions options);
+
+    default JavascriptPlaceholder create(final String identifier, final String script) {
+        return create(identifier, script, ScriptOptions.DEFAULT);
+    }
+
+    /**
+     * Hands the shared libraries and freshly loaded placeholders to the engine before any of them runs.
+     */
+    default void preload(final Map<String, String> libraries, final Collection<JavascriptPlaceholder> placeholders) {}
 }
@@ -1,7 +1,15 @@
 package com.extendedclip.papi.expansion.javascript;
 
+import com.extendedclip.papi.expansion.javascript.config.ScriptOptions;
+import com.extendedclip.papi.expansion.javascript.evaluator.PreparedScript;
 import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluatorFactory;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
 public final class SimpleJavascriptPlaceholderFactory implements JavascriptPlaceholderFactory {
     private final JavascriptExpansion expansion;
     private final ScriptEvaluatorFactory evaluatorFactory;
@@ -12,7 +20,16 @@ public final class SimpleJavascriptPlaceholderFactory implements JavascriptPlace
     }
 
     @Override
-    public JavascriptPlaceholder create(final String identifier, final String script) {
-        return new JavascriptPlaceholder(identifier, script, evaluatorFactory, expansion);
+    public JavascriptPlaceholder create(final String identifier, final String script, final ScriptOptions options) {
+        return new JavascriptPlaceholder(identifier, script, options, evaluatorFactory, expansion);
+    }
+
+    @Override
+    public void preload(final Map<String, String> libraries, final Collection<JavascriptPlaceholder> placeholders) {
+        final List<PreparedScript> scripts = placeholders.stream()
+                .map(JavascriptPlaceholder::getPreparedScript)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        evaluatorFactory.preload(libraries, scripts);
     }
 }
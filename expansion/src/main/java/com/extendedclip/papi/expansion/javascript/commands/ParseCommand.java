@@ -58,13 +58,16 @@ public final class ParseCommand extends ExpansionCommand {
         final String script = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
         final JavascriptPlaceholder placeholder = placeholderFactory.create("parse-command", String.join(" ", script));
 
+        try {
+            if (!player.hasPlayedBefore() || player.getName() == null) {
+                ExpansionUtils.sendMsg(sender, "&cUnknown player " + args[0]);
+                return;
+            }
 
-        if (!player.hasPlayedBefore() || player.getName() == null) {
-            ExpansionUtils.sendMsg(sender, "&cUnknown player " + args[0]);
-            return;
+            sender.sendMessage(placeholder.evaluate(player));
+        } finally {
+            placeholder.close();
         }
-
-        sender.sendMessage(placeholder.evaluate(player));
     }
 
     @Override
@@ -0,0 +1,121 @@
+package com.extendedclip.papi.expansion.javascript.commands;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import com.extendedclip.papi.expansion.javascript.commands.router.ExpansionCommand;
+import com.extendedclip.papi.expansion.javascript.script.ScriptRegistry;
+import com.extendedclip.papi.expansion.javascript.script.stats.LatencyHistogram;
+import com.extendedclip.papi.expansion.javascript.script.stats.ScriptStats;
+import org.bukkit.command.CommandSender;
+import org.bukkit.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+public final class StatsCommand extends ExpansionCommand {
+    private static final String ARG_RESET = "reset";
+    private static final String NAME = "stats";
+
+    private final ScriptRegistry registry;
+
+    public StatsCommand(final String parentCommandName, final ScriptRegistry registry) {
+        super(parentCommandName, NAME);
+        this.registry = registry;
+    }
+
+    @Override
+    public void execute(final CommandSender sender, final String[] args) {
+        if (args.length == 0) {
+            final List<JavascriptPlaceholder> placeholders = registry.getAllPlaceholders().stream()
+                    .sorted(Comparator.comparingLong((JavascriptPlaceholder placeholder) -> placeholder.getStats().getCalls()).reversed())
+                    .collect(Collectors.toList());
+            if (placeholders.isEmpty()) {
+                ExpansionUtils.sendMsg(sender, "&7No scripts loaded.");
+                return;
+            }
+            for (JavascriptPlaceholder placeholder : placeholders) {
+                final ScriptStats stats = placeholder.getStats();
+                ExpansionUtils.sendMsg(sender, "&f" + placeholder.getIdentifier() + "&7: " + summary(stats)
+                        + " &7" + latencies(stats.getTotal()));
+            }
+            return;
+        }
+
+        final JavascriptPlaceholder placeholder = registry.getPlaceholder(args[0]);
+        if (placeholder == null) {
+            ExpansionUtils.sendMsg(sender, "&cInvalid javascript identifier! Please re-check your typo");
+            return;
+        }
+
+        final ScriptStats stats = placeholder.getStats();
+        if (args.length > 1 && args[1].equals(ARG_RESET)) {
+            stats.reset();
+            ExpansionUtils.sendMsg(sender, "&aStatistics of '" + placeholder.getIdentifier() + "' reset");
+            return;
+        }
+
+        final List<String> lines = new ArrayList<>();
+        lines.add("&f" + placeholder.getIdentifier() + "&7: " + summary(stats));
+        lines.add("&7total: " + latencies(stats.getTotal()));
+        for (ScriptStats.Phase phase : ScriptStats.Phase.values()) {
+            lines.add("&7" + phase + ": " + latencies(stats.getPhase(phase)));
+        }
+        if (stats.getBatchedEvaluations() > 0) {
+            lines.add("&7batched evaluations: &f" + stats.getBatchedEvaluations());
+        }
+        ExpansionUtils.sendMsg(sender, lines.toArray(new String[0]));
+    }
+
+    @Override
+    public @NotNull List<String> tabComplete(final CommandSender sender, final String[] args) {
+        if (args.length == 1) {
+            final List<String> identifiers = registry.getAllPlaceholders().stream()
+                    .map(JavascriptPlaceholder::getIdentifier)
+                    .collect(Collectors.toList());
+            return StringUtil.copyPartialMatches(args[0], identifiers, new ArrayList<>());
+        }
+        if (args.length == 2) {
+            return StringUtil.copyPartialMatches(args[1], Collections.singletonList(ARG_RESET), new ArrayList<>());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected @NotNull String getCommandFormat() {
+        return "stats [identifier] [reset]";
+    }
+
+    @Override
+    protected @NotNull String getDescription() {
+        return "Show call counts and latencies of scripts";
+    }
+
+    private static String summary(final ScriptStats stats) {
+        return "&f" + stats.getCalls() + " &7calls, &f" + stats.getErrors() + " &7errors, &f" + stats.getTimeouts() + " &7timeouts";
+    }
+
+    private static String latencies(final LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "&8no samples";
+        }
+        return "p50 &f" + formatNanos(histogram.getPercentileNanos(50))
+                + " &7p99 &f" + formatNanos(histogram.getPercentileNanos(99))
+                + " &7max &f" + formatNanos(histogram.getMaxNanos())
+                + " &8(" + histogram.getCount() + ")";
+    }
+
+    private static String formatNanos(final long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1f\u00b5s", nanos / 1_000d);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000d);
+        }
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1_000_000_000d);
+    }
+}
@@ -45,12 +45,14 @@ public final class CommandRegistrar {
         final DebugCommand debugCommand = new DebugCommand(COMMAND_NAME, registry);
         final ParseCommand parseCommand = new ParseCommand(COMMAND_NAME, placeholderFactory, expansion);
         final ReloadCommand reloadCommand = new ReloadCommand(COMMAND_NAME, loader);
+        final StatsCommand statsCommand = new StatsCommand(COMMAND_NAME, registry);
         final Map<String, ExpansionCommand> commandMap = ImmutableMap.<String, ExpansionCommand>builder()
                 .put("git", gitCommand)
                 .put("list", listCommand)
                 .put("debug", debugCommand)
                 .put("parse", parseCommand)
                 .put("reload", reloadCommand)
+                .put("stats", statsCommand)
                 .build();
 
         this.router = new ExpansionCommandRouter(JavascriptExpansion.VERSION, JavascriptExpansion.AUTHOR, WIKI_LINK, commandMap);
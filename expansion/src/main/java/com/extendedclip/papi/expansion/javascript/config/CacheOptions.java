@@ -0,0 +1,81 @@
+package com.extendedclip.papi.expansion.javascript.config;
+
+import org.jetbrains.annotations.NotNull;
+
+public final class CacheOptions {
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final long ttlMillis;
+    private final Scope scope;
+    private final int maxEntries;
+
+    public CacheOptions(final long ttlMillis, @NotNull final Scope scope, final int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.scope = scope;
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    @NotNull
+    public Scope getScope() {
+        return scope;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Parses durations such as {@code 500ms}, {@code 2s} or {@code 1m}. Plain numbers are read as seconds.
+     */
+    public static long parseDuration(@NotNull final String value) {
+        final String duration = value.trim().toLowerCase();
+        try {
+            if (duration.endsWith("ms")) {
+                return Long.parseLong(duration.substring(0, duration.length() - 2).trim());
+            } else if (duration.endsWith("s")) {
+                return Math.round(Double.parseDouble(duration.substring(0, duration.length() - 1).trim()) * 1000);
+            } else if (duration.endsWith("m")) {
+                return Math.round(Double.parseDouble(duration.substring(0, duration.length() - 1).trim()) * 60_000);
+            }
+            return Math.round(Double.parseDouble(duration) * 1000);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid duration: " + value, exception);
+        }
+    }
+
+    public enum Scope {
+        /**
+         * Results are cached separately for every player.
+         */
+        PLAYER("player"),
+        /**
+         * One result is shared by all players.
+         */
+        GLOBAL("global");
+
+        private final String name;
+
+        Scope(final String name) {
+            this.name = name;
+        }
+
+        @NotNull
+        public static Scope fromString(@NotNull final String name) {
+            for (Scope scope : values()) {
+                if (scope.name.equalsIgnoreCase(name)) {
+                    return scope;
+                }
+            }
+            throw new IllegalArgumentException("Unknown cache scope: " + name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
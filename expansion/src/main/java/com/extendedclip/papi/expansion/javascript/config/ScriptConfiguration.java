@@ -13,6 +13,9 @@ public interface ScriptConfiguration {
 
     void setPath(@NotNull String scriptName, @Nullable final String name);
 
+    @NotNull
+    ScriptOptions getOptions(@NotNull String scriptName);
+
     @NotNull
     Collection<String> getScripts();
 
@@ -0,0 +1,120 @@
+package com.extendedclip.papi.expansion.javascript.config;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public final class ScriptOptions {
+    public static final ScriptOptions DEFAULT = new ScriptOptions(PlaceholderMode.SOURCE, null, null, false, 0, "", 0, "");
+
+    private final PlaceholderMode placeholderMode;
+    private final CacheOptions cacheOptions;
+    private final String entryFunction;
+    private final boolean async;
+    private final long maxStalenessMillis;
+    private final String pendingResult;
+    private final long timeoutMillis;
+    private final String timeoutResult;
+
+    public ScriptOptions(@NotNull final PlaceholderMode placeholderMode, @Nullable final CacheOptions cacheOptions, @Nullable final String entryFunction,
+                         final boolean async, final long maxStalenessMillis, @NotNull final String pendingResult,
+                         final long timeoutMillis, @NotNull final String timeoutResult) {
+        this.placeholderMode = placeholderMode;
+        this.cacheOptions = cacheOptions;
+        this.entryFunction = entryFunction;
+        this.async = async;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.pendingResult = pendingResult;
+        this.timeoutMillis = timeoutMillis;
+        this.timeoutResult = timeoutResult;
+    }
+
+    @NotNull
+    public PlaceholderMode getPlaceholderMode() {
+        return placeholderMode;
+    }
+
+    /**
+     * @return the result cache settings, or null if results of this script are not cached
+     */
+    @Nullable
+    public CacheOptions getCacheOptions() {
+        return cacheOptions;
+    }
+
+    /**
+     * @return the function called for every request, or null if the whole script is evaluated instead
+     */
+    @Nullable
+    public String getEntryFunction() {
+        return entryFunction;
+    }
+
+    /**
+     * @return true if requests are answered with the last result while the script runs in the background
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return how old the last result of an asynchronous script may get before it is refreshed
+     */
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * @return the result returned by an asynchronous script before its first run has completed
+     */
+    @NotNull
+    public String getPendingResult() {
+        return pendingResult;
+    }
+
+    /**
+     * @return how long a single evaluation may run before it is interrupted, or 0 for no limit
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return the result returned in place of an evaluation that was interrupted
+     */
+    @NotNull
+    public String getTimeoutResult() {
+        return timeoutResult;
+    }
+
+    public enum PlaceholderMode {
+        /**
+         * Inner placeholders are resolved and spliced into the script text before every evaluation.
+         */
+        SOURCE("source"),
+        /**
+         * The script text is never rewritten; resolved values are exposed through the {@code P} binding.
+         */
+        BINDINGS("bindings");
+
+        private final String name;
+
+        PlaceholderMode(final String name) {
+            this.name = name;
+        }
+
+        @NotNull
+        public static PlaceholderMode fromString(@NotNull final String name) {
+            for (PlaceholderMode mode : values()) {
+                if (mode.name.equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown placeholder mode: " + name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
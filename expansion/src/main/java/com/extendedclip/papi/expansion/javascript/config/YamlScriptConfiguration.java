@@ -15,9 +15,13 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public final class YamlScriptConfiguration implements ScriptConfiguration {
+    private static final Pattern ENTRY_FUNCTION_PATTERN = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+    private static final long DEFAULT_MAX_STALENESS_MILLIS = 1000;
+
     private final FileConfiguration fileConfiguration;
     private final File configurationFile;
     private final HeaderWriter headerWriter;
@@ -56,6 +60,70 @@ public final class YamlScriptConfiguration implements ScriptConfiguration {
         return scriptDirectoryPath.resolve(fileName);
     }
 
+    @Override
+    @NotNull
+    public ScriptOptions getOptions(@NotNull final String scriptName) {
+        final ConfigurationSection scriptSection = fileConfiguration.getConfigurationSection(scriptName);
+        if (scriptSection == null) {
+            return ScriptOptions.DEFAULT;
+        }
+
+        ScriptOptions.PlaceholderMode placeholderMode = ScriptOptions.PlaceholderMode.SOURCE;
+        final String modeName = scriptSection.getString("placeholder_mode");
+        if (modeName != null) {
+            try {
+                placeholderMode = ScriptOptions.PlaceholderMode.fromString(modeName);
+            } catch (IllegalArgumentException exception) {
+                ExpansionUtils.warnLog("Unknown placeholder_mode '" + modeName + "' for script '" + scriptName + "'. Defaulting to '" + placeholderMode + "'");
+            }
+        }
+        String entryFunction = scriptSection.getString("entry_function");
+        if (entryFunction != null && !ENTRY_FUNCTION_PATTERN.matcher(entryFunction).matches()) {
+            ExpansionUtils.warnLog("Invalid entry_function '" + entryFunction + "' for script '" + scriptName + "'. The whole script will be evaluated instead");
+            entryFunction = null;
+        }
+        final boolean async = scriptSection.getBoolean("async", false);
+        long maxStalenessMillis = DEFAULT_MAX_STALENESS_MILLIS;
+        try {
+            maxStalenessMillis = CacheOptions.parseDuration(scriptSection.getString("max_staleness", "1s"));
+        } catch (IllegalArgumentException exception) {
+            ExpansionUtils.warnLog("Invalid max_staleness for script '" + scriptName + "'. Defaulting to 1s: " + exception.getMessage());
+        }
+        final String pendingResult = scriptSection.getString("pending_result", "");
+        long timeoutMillis = 0;
+        final String timeout = scriptSection.getString("timeout");
+        if (timeout != null) {
+            try {
+                timeoutMillis = Math.max(0, CacheOptions.parseDuration(timeout));
+            } catch (IllegalArgumentException exception) {
+                ExpansionUtils.warnLog("Invalid timeout for script '" + scriptName + "'. The script will run without one: " + exception.getMessage());
+            }
+        }
+        final String timeoutResult = scriptSection.getString("timeout_result", "");
+        return new ScriptOptions(placeholderMode, getCacheOptions(scriptName, scriptSection.getConfigurationSection("cache")), entryFunction,
+                async, maxStalenessMillis, pendingResult, timeoutMillis, timeoutResult);
+    }
+
+    @Nullable
+    private CacheOptions getCacheOptions(@NotNull final String scriptName, @Nullable final ConfigurationSection cacheSection) {
+        if (cacheSection == null) {
+            return null;
+        }
+
+        try {
+            final long ttlMillis = CacheOptions.parseDuration(cacheSection.getString("ttl", "1s"));
+            final CacheOptions.Scope scope = CacheOptions.Scope.fromString(cacheSection.getString("scope", CacheOptions.Scope.PLAYER.toString()));
+            final int maxEntries = cacheSection.getInt("max_entries", CacheOptions.DEFAULT_MAX_ENTRIES);
+            if (ttlMillis <= 0 || maxEntries <= 0) {
+                return null;
+            }
+            return new CacheOptions(ttlMillis, scope, maxEntries);
+        } catch (IllegalArgumentException exception) {
+            ExpansionUtils.warnLog("Invalid cache settings for script '" + scriptName + "'. Caching is disabled: " + exception.getMessage());
+            return null;
+        }
+    }
+
     @Override
     public void setPath(@NotNull final String scriptName, @Nullable final String name) {
         final String key = scriptName + ".file";
@@ -0,0 +1,79 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.config.CacheOptions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the last result of an asynchronous placeholder for every player and arguments. Requests are
+ * always answered from here, a result older than the allowed staleness only triggers a refresh.
+ */
+public final class AsyncResultCache {
+    private final long maxStalenessNanos;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > CacheOptions.DEFAULT_MAX_ENTRIES;
+        }
+    };
+
+    public AsyncResultCache(final long maxStalenessMillis) {
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+    }
+
+    @NotNull
+    public Entry get(@NotNull final String key) {
+        synchronized (entries) {
+            return entries.computeIfAbsent(key, k -> new Entry());
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public final class Entry {
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile String value;
+        private volatile long updatedAt;
+
+        private Entry() {
+        }
+
+        /**
+         * @return the last computed result, or null if none has completed yet
+         */
+        @Nullable
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return true if the caller should refresh this entry; it must call {@link #complete(String)} afterwards
+         */
+        public boolean claimRefresh() {
+            if (value != null && System.nanoTime() - updatedAt < maxStalenessNanos) {
+                return false;
+            }
+            return refreshing.compareAndSet(false, true);
+        }
+
+        /**
+         * Ends a refresh. A null result means the script failed, the previous value is kept then.
+         */
+        public void complete(@Nullable final String result) {
+            if (result != null) {
+                value = result;
+                updatedAt = System.nanoTime();
+            }
+            refreshing.set(false);
+        }
+    }
+}
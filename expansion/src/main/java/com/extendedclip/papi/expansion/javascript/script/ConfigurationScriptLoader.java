@@ -3,47 +3,120 @@ package com.extendedclip.papi.expansion.javascript.script;
 import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
 import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholderFactory;
 import com.extendedclip.papi.expansion.javascript.config.ScriptConfiguration;
+import com.extendedclip.papi.expansion.javascript.evaluator.PreparedScript;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public final class ConfigurationScriptLoader implements ScriptLoader {
     private final ScriptRegistry registry;
     private final ScriptConfiguration configuration;
     private final JavascriptPlaceholderFactory placeholderFactory;
+    private final Path libraryDirectory;
+    private final ScriptCodeCache codeCache;
 
     public ConfigurationScriptLoader(ScriptRegistry registry, ScriptConfiguration configuration, JavascriptPlaceholderFactory placeholderFactory) {
+        this(registry, configuration, placeholderFactory, null, null);
+    }
+
+    /**
+     * @param libraryDirectory folder whose scripts are shared by all placeholders, or null for none
+     * @param codeCache        where compiled scripts are kept between restarts, or null to compile from source
+     */
+    public ConfigurationScriptLoader(ScriptRegistry registry, ScriptConfiguration configuration, JavascriptPlaceholderFactory placeholderFactory,
+                                     @Nullable Path libraryDirectory, @Nullable ScriptCodeCache codeCache) {
         this.registry = registry;
         this.configuration = configuration;
         this.placeholderFactory = placeholderFactory;
+        this.libraryDirectory = libraryDirectory;
+        this.codeCache = codeCache;
     }
 
     @Override
     public int reload() throws IOException {
-        registry.getAllPlaceholders().forEach(JavascriptPlaceholder::saveData);
-        registry.clearRegistry();
+        final Collection<JavascriptPlaceholder> previous = registry.getAllPlaceholders();
+        // Saved first, the new placeholders read the same data files
+        previous.forEach(JavascriptPlaceholder::saveData);
+        if (codeCache != null) {
+            codeCache.save(getPreparedScripts(previous));
+        }
         configuration.reload();
-        int loaded = 0;
-        for (final String scriptIdentifier: configuration.getScripts()) {
-            final Path path = configuration.getPath(scriptIdentifier);
-            if (path == null) continue;
-            if (!Files.exists(path)) {
-                Files.createDirectories(path.getParent());
-                Files.createFile(path);
+        final List<JavascriptPlaceholder> placeholders = new ArrayList<>();
+        try {
+            for (final String scriptIdentifier: configuration.getScripts()) {
+                final Path path = configuration.getPath(scriptIdentifier);
+                if (path == null) continue;
+                if (!Files.exists(path)) {
+                    Files.createDirectories(path.getParent());
+                    Files.createFile(path);
+                }
+                final String script = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+                placeholders.add(placeholderFactory.create(scriptIdentifier, script, configuration.getOptions(scriptIdentifier)));
             }
-            final String script = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
-            final JavascriptPlaceholder placeholder = placeholderFactory.create(scriptIdentifier, script);
-            registry.register(placeholder);
-            loaded++;
+            if (codeCache != null) {
+                final List<PreparedScript> preparedScripts = getPreparedScripts(placeholders);
+                codeCache.load(preparedScripts);
+                codeCache.retain(preparedScripts);
+            }
+            placeholderFactory.preload(loadLibraries(), placeholders);
+        } catch (IOException | RuntimeException exception) {
+            // Never registered, so nothing else would release their prepared scripts. The previous ones stay
+            placeholders.forEach(JavascriptPlaceholder::close);
+            throw exception;
         }
-        return loaded;
+        registry.replaceAll(placeholders);
+        previous.forEach(JavascriptPlaceholder::close);
+        return placeholders.size();
+    }
+
+    /**
+     * Reads the library scripts in file name order, which is also the order they are evaluated in.
+     */
+    private Map<String, String> loadLibraries() throws IOException {
+        final Map<String, String> libraries = new LinkedHashMap<>();
+        if (libraryDirectory == null || !Files.isDirectory(libraryDirectory)) {
+            return libraries;
+        }
+        final List<Path> paths;
+        try (Stream<Path> files = Files.list(libraryDirectory)) {
+            paths = files.filter(path -> path.getFileName().toString().endsWith(".js") && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (final Path path : paths) {
+            libraries.put(path.getFileName().toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        }
+        return libraries;
+    }
+
+    private static List<PreparedScript> getPreparedScripts(final Collection<JavascriptPlaceholder> placeholders) {
+        final List<PreparedScript> scripts = new ArrayList<>();
+        for (final JavascriptPlaceholder placeholder : placeholders) {
+            if (placeholder.getPreparedScript() != null) {
+                scripts.add(placeholder.getPreparedScript());
+            }
+        }
+        return scripts;
     }
 
     @Override
     public void clear() {
-        registry.getAllPlaceholders().forEach(JavascriptPlaceholder::saveData);
+        final Collection<JavascriptPlaceholder> previous = registry.getAllPlaceholders();
+        previous.forEach(JavascriptPlaceholder::saveData);
+        if (codeCache != null) {
+            codeCache.save(getPreparedScripts(previous));
+        }
         registry.clearRegistry();
+        previous.forEach(JavascriptPlaceholder::close);
     }
 }
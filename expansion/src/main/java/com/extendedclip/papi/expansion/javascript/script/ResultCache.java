@@ -0,0 +1,112 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.config.CacheOptions;
+import org.bukkit.OfflinePlayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches evaluation results of a single placeholder for a fixed time. Entries are keyed by player
+ * (unless the scope is global) and arguments, and the least recently used entries are dropped once
+ * the configured size is exceeded.
+ */
+public final class ResultCache {
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final long ttlNanos;
+    private final CacheOptions.Scope scope;
+    private final Map<String, Entry> entries;
+
+    public ResultCache(@NotNull final CacheOptions options) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(options.getTtlMillis());
+        this.scope = options.getScope();
+        final int maxEntries = Math.max(1, options.getMaxEntries());
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Nullable
+    public String get(@NotNull final String key) {
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.createdAt >= ttlNanos) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(@NotNull final String key, @NotNull final String value) {
+        synchronized (entries) {
+            entries.put(key, new Entry(value, System.nanoTime()));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Keys are per player with a global scope too if an argument holds bracket placeholders, those are
+     * resolved for each player and may give every player different arguments.
+     */
+    @NotNull
+    public String createKey(@Nullable final OfflinePlayer player, @Nullable final String[] args) {
+        return toKey(scope == CacheOptions.Scope.PLAYER || hasBracketPlaceholders(args) ? player : null, args);
+    }
+
+    private static boolean hasBracketPlaceholders(@Nullable final String[] args) {
+        if (args != null) {
+            for (String arg : args) {
+                if (arg != null && arg.indexOf('{') >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a key for the given player and arguments, which is shared by all players if player is null
+     */
+    @NotNull
+    public static String toKey(@Nullable final OfflinePlayer player, @Nullable final String[] args) {
+        final StringBuilder key = new StringBuilder();
+        if (player != null) {
+            key.append(player.getUniqueId());
+        }
+        if (args != null) {
+            for (String arg : args) {
+                key.append(KEY_SEPARATOR);
+                if (arg != null) {
+                    key.append(arg);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long createdAt;
+
+        private Entry(final String value, final long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.evaluator.PreparedScript;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the compiled form of prepared scripts on disk, so they are not compiled from source again after a
+ * restart. Files are named after a hash of the engine version and the script, a changed script or engine
+ * therefore never reads an old file, and old files are removed on the next load.
+ */
+public final class ScriptCodeCache {
+    private static final String EXTENSION = ".bin";
+
+    private final Path directory;
+    private final String version;
+
+    public ScriptCodeCache(@NotNull final Path directory, @NotNull final String version) {
+        this.directory = directory;
+        this.version = version;
+    }
+
+    /**
+     * Hands the persisted data to every script that has some.
+     */
+    public void load(@NotNull final Collection<PreparedScript> scripts) {
+        for (final PreparedScript script : scripts) {
+            final Path path = getPath(script);
+            if (!Files.isRegularFile(path)) {
+                continue;
+            }
+            try {
+                script.setCodeCache(Files.readAllBytes(path));
+            } catch (IOException exception) {
+                ExpansionUtils.warnLog("Failed to read code cache " + path.getFileName(), exception);
+            }
+        }
+    }
+
+    /**
+     * Writes the data of scripts that have been compiled and are not on disk yet, or whose data on disk was
+     * rejected and replaced.
+     */
+    public void save(@NotNull final Collection<PreparedScript> scripts) {
+        for (final PreparedScript script : scripts) {
+            final byte[] data = script.getCodeCache();
+            final Path path = getPath(script);
+            if (data == null) {
+                continue;
+            }
+            try {
+                if (Files.isRegularFile(path) && Arrays.equals(Files.readAllBytes(path), data)) {
+                    continue;
+                }
+                Files.createDirectories(directory);
+                // Written next to the target first, a crash never leaves a truncated file behind
+                final Path temporary = Files.createTempFile(directory, "code", ".tmp");
+                Files.write(temporary, data);
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException exception) {
+                ExpansionUtils.warnLog("Failed to write code cache " + path.getFileName(), exception);
+            }
+        }
+    }
+
+    /**
+     * Removes the files of every script that is not among the given ones.
+     */
+    public void retain(@NotNull final Collection<PreparedScript> scripts) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        final Set<Path> kept = new HashSet<>();
+        for (final PreparedScript script : scripts) {
+            kept.add(getPath(script));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (final Path path : (Iterable<Path>) files::iterator) {
+                final String name = path.getFileName().toString();
+                if ((name.endsWith(EXTENSION) || name.endsWith(".tmp")) && !kept.contains(path)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException exception) {
+            ExpansionUtils.warnLog("Failed to clean up code cache", exception);
+        }
+    }
+
+    private Path getPath(final PreparedScript script) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception); // Every JVM ships SHA-256
+        }
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        if (script.getEntryFunction() != null) {
+            digest.update(script.getEntryFunction().getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        digest.update(script.getSource().getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(HexFormat.of().formatHex(digest.digest()) + EXTENSION);
+    }
+}
@@ -1,42 +1,181 @@
 package com.extendedclip.papi.expansion.javascript.script;
 
 import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public final class ScriptRegistry {
-    private final Map<String, JavascriptPlaceholder> registeredScripts;
+    private static final char ARGUMENT_PREFIX = '_';
+
+    // Copy-on-write snapshot, so lookups never lock and a reload swaps every script at once
+    private volatile Index index;
 
     public ScriptRegistry() {
         this(new HashMap<>());
     }
 
     public ScriptRegistry(final Map<String, JavascriptPlaceholder> registeredScripts) {
-        this.registeredScripts = registeredScripts;
+        this.index = new Index(registeredScripts);
+    }
+
+    public synchronized boolean register(final JavascriptPlaceholder placeholder) {
+        if (index.scripts.containsKey(placeholder.getIdentifier())) {
+            return false; // Registered only if there was not prior script with the same name.
+        }
+        final Map<String, JavascriptPlaceholder> scripts = new HashMap<>(index.scripts);
+        scripts.put(placeholder.getIdentifier(), placeholder);
+        index = new Index(scripts);
+        return true;
     }
 
-    public boolean register(final JavascriptPlaceholder placeholder) {
-        final JavascriptPlaceholder previousPlaceholder = registeredScripts.putIfAbsent(placeholder.getIdentifier(), placeholder);
-        return previousPlaceholder == null; // Registered only if there was not prior script with the same name.
+    public synchronized void unregister(final JavascriptPlaceholder placeholder) {
+        final Map<String, JavascriptPlaceholder> scripts = new HashMap<>(index.scripts);
+        scripts.remove(placeholder.getIdentifier());
+        index = new Index(scripts);
     }
 
-    public void unregister(final JavascriptPlaceholder placeholder) {
-        registeredScripts.remove(placeholder.getIdentifier());
+    /**
+     * Replaces all registered scripts in a single step.
+     */
+    public synchronized void replaceAll(final Collection<JavascriptPlaceholder> placeholders) {
+        final Map<String, JavascriptPlaceholder> scripts = new HashMap<>();
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            scripts.putIfAbsent(placeholder.getIdentifier(), placeholder);
+        }
+        index = new Index(scripts);
     }
 
-    public void clearRegistry() {
-        registeredScripts.clear();
+    public synchronized void clearRegistry() {
+        index = new Index(new HashMap<>());
     }
 
     @Nullable
     public JavascriptPlaceholder getPlaceholder(final String identifier) {
-        return registeredScripts.get(identifier);
+        return index.scripts.get(identifier);
     }
 
     public Collection<JavascriptPlaceholder> getAllPlaceholders() {
-        return registeredScripts.values();
+        return index.scripts.values();
+    }
+
+    /**
+     * Finds the script a PlaceholderAPI identifier refers to. An identifier either names a script
+     * exactly (ignoring case), or has the form {@code <script>_<arguments>}, in which case the longest
+     * matching script identifier wins. Walks the identifier once, only the arguments are copied.
+     */
+    @Nullable
+    public Match match(@NotNull final String identifier) {
+        final Index current = index;
+
+        JavascriptPlaceholder prefixMatch = null;
+        int prefixEnd = -1;
+        Node node = current.prefixTree;
+        for (int i = 0; i < identifier.length() && node != null; i++) {
+            final char c = identifier.charAt(i);
+            if (c == ARGUMENT_PREFIX && i > 0 && node.placeholder != null) {
+                prefixMatch = node.placeholder;
+                prefixEnd = i;
+            }
+            node = node.child(c);
+        }
+        if (node != null && node.placeholder != null) {
+            return new Match(node.placeholder, null);
+        }
+
+        node = current.lowerCasePrefixTree;
+        for (int i = 0; i < identifier.length() && node != null; i++) {
+            node = node.child(Character.toLowerCase(identifier.charAt(i)));
+        }
+        if (node != null && node.placeholder != null) {
+            return new Match(node.placeholder, null);
+        }
+
+        return prefixMatch != null ? new Match(prefixMatch, identifier.substring(prefixEnd + 1)) : null;
+    }
+
+    public static final class Match {
+        private final JavascriptPlaceholder placeholder;
+        private final String arguments;
+
+        private Match(final JavascriptPlaceholder placeholder, final String arguments) {
+            this.placeholder = placeholder;
+            this.arguments = arguments;
+        }
+
+        @NotNull
+        public JavascriptPlaceholder getPlaceholder() {
+            return placeholder;
+        }
+
+        /**
+         * @return the text after {@code <script>_}, or null if the identifier named the script exactly
+         */
+        @Nullable
+        public String getArguments() {
+            return arguments;
+        }
+    }
+
+    private static final class Index {
+        private final Map<String, JavascriptPlaceholder> scripts;
+        private final Node prefixTree = new Node();
+        private final Node lowerCasePrefixTree = new Node();
+
+        private Index(final Map<String, JavascriptPlaceholder> scripts) {
+            this.scripts = Collections.unmodifiableMap(scripts);
+            for (Map.Entry<String, JavascriptPlaceholder> entry : scripts.entrySet()) {
+                final String identifier = entry.getKey();
+                Node node = prefixTree;
+                Node lowerCaseNode = lowerCasePrefixTree;
+                for (int i = 0; i < identifier.length(); i++) {
+                    node = node.getOrCreateChild(identifier.charAt(i));
+                    lowerCaseNode = lowerCaseNode.getOrCreateChild(Character.toLowerCase(identifier.charAt(i)));
+                }
+                node.placeholder = entry.getValue();
+                if (lowerCaseNode.placeholder == null) {
+                    lowerCaseNode.placeholder = entry.getValue();
+                }
+            }
+        }
+    }
+
+    /**
+     * A prefix tree over script identifiers, one node per character. Only written while building an index.
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private JavascriptPlaceholder placeholder;
+
+        @Nullable
+        private Node child(final char key) {
+            final int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node getOrCreateChild(final char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            newKeys[index] = key;
+            newChildren[index] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[index];
+        }
     }
 }
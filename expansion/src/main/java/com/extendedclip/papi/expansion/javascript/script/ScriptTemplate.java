@@ -0,0 +1,135 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.OfflinePlayer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A script split into literal source segments and %placeholder% slots. Parsing happens once, so
+ * rendering only has to resolve the slots and join the pieces.
+ */
+public final class ScriptTemplate {
+    public static final String PLACEHOLDER_BINDING = "P";
+
+    // Comments are matched as well so that placeholders inside them are left untouched
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("//.*|/\\*[\\S\\s]*?\\*/|%([^%]+)%");
+    private static final Pattern BINDING_PATTERN = Pattern.compile("//.*|/\\*[\\S\\s]*?\\*/|\\bP\\[\\s*(['\"])([^'\"]+)\\1\\s*]");
+
+    private final String source;
+    private final String[] literals;
+    private final String[] placeholders;
+    private final String[] tokens;
+    private final boolean bound;
+    private final int literalLength;
+
+    private ScriptTemplate(final String source, final String[] literals, final String[] placeholders, final String[] tokens, final boolean bound) {
+        this.source = source;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.tokens = tokens;
+        this.bound = bound;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static ScriptTemplate parse(@NotNull final String source) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> placeholders = new ArrayList<>();
+        final List<String> tokens = new ArrayList<>();
+        final Matcher matcher = PLACEHOLDER_PATTERN.matcher(source);
+        int literalStart = 0;
+        while (matcher.find()) {
+            if (matcher.group(1) == null) continue;
+            literals.add(source.substring(literalStart, matcher.start()));
+            placeholders.add(matcher.group(1));
+            tokens.add(matcher.group(0));
+            literalStart = matcher.end();
+        }
+        literals.add(source.substring(literalStart));
+        return new ScriptTemplate(source, literals.toArray(new String[0]), placeholders.toArray(new String[0]), tokens.toArray(new String[0]), false);
+    }
+
+    /**
+     * Parses a script whose text is never rewritten. Every {@code P["name"]} reference outside of
+     * comments is collected, and {@link #resolve(OfflinePlayer)} provides the values for them.
+     */
+    public static ScriptTemplate parseBindings(@NotNull final String source) {
+        final Set<String> placeholders = new LinkedHashSet<>();
+        final Matcher matcher = BINDING_PATTERN.matcher(source);
+        while (matcher.find()) {
+            if (matcher.group(2) == null) continue;
+            placeholders.add(matcher.group(2));
+        }
+        final String[] names = placeholders.toArray(new String[0]);
+        final String[] tokens = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            tokens[i] = '%' + names[i] + '%';
+        }
+        return new ScriptTemplate(source, new String[]{source}, names, tokens, true);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean hasPlaceholders() {
+        return placeholders.length > 0;
+    }
+
+    /**
+     * @return true if the rendered script is the same for every player
+     */
+    public boolean isConstant() {
+        return bound || placeholders.length == 0;
+    }
+
+    /**
+     * @return true if the resolved values are passed through the {@value #PLACEHOLDER_BINDING} binding
+     */
+    public boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * @return the placeholder names in source order, without the surrounding '%' characters
+     */
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(placeholders));
+    }
+
+    public String render(final OfflinePlayer player) {
+        if (isConstant()) {
+            return source;
+        }
+
+        final StringBuilder buffer = new StringBuilder(literalLength + placeholders.length * 16);
+        for (int i = 0; i < placeholders.length; i++) {
+            buffer.append(literals[i]);
+            buffer.append(PlaceholderAPI.setPlaceholders(player, tokens[i]));
+        }
+        buffer.append(literals[placeholders.length]);
+        return buffer.toString();
+    }
+
+    public Map<String, Object> resolve(final OfflinePlayer player) {
+        final Map<String, Object> values = new HashMap<>(placeholders.length * 2);
+        for (int i = 0; i < placeholders.length; i++) {
+            values.put(placeholders[i], PlaceholderAPI.setPlaceholders(player, tokens[i]));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,74 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interrupts evaluations that run past their deadline.
+ */
+public final class ScriptWatchdog {
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public ScriptWatchdog() {
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "javascript-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Almost every deadline is cancelled, they shouldn't pile up in the queue until they are due
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts a deadline for the evaluation about to run on the given evaluator. The caller must
+     * {@link Deadline#cancel() cancel} it once the evaluation has returned.
+     */
+    @NotNull
+    public Deadline start(@NotNull final ScriptEvaluator evaluator, final long timeoutMillis) {
+        final Deadline deadline = new Deadline(evaluator);
+        try {
+            deadline.future = scheduler.schedule(deadline::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down, the evaluation simply runs without a deadline
+        }
+        return deadline;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public static final class Deadline {
+        private final ScriptEvaluator evaluator;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean expired = false;
+
+        private Deadline(final ScriptEvaluator evaluator) {
+            this.evaluator = evaluator;
+        }
+
+        private void expire() {
+            expired = true;
+            evaluator.interrupt();
+        }
+
+        public void cancel() {
+            final ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        /**
+         * @return true if the evaluation was interrupted for running too long
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.extendedclip.papi.expansion.javascript.script.data;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the data of a script is written to disk.
+ */
+@Name("javascript.DataSave")
+@Label("Script Data Save")
+@Category({"PlaceholderAPI", "JavaScript"})
+final class DataSaveEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+}
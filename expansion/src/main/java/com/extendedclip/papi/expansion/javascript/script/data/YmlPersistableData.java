@@ -32,11 +32,19 @@ public final class YmlPersistableData implements PersistableData {
 
     @Override
     public void save() {
+        final DataSaveEvent event = new DataSaveEvent();
+        event.begin();
         try {
             configuration.save(dataFile);
         } catch (IOException e) {
             ExpansionUtils.errorLog(ExpansionUtils.PREFIX + "An error occurred while saving data for " + identifier, e);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = dataFile.getPath();
+            event.bytes = dataFile.length();
+            event.commit();
+        }
     }
 
     @Override
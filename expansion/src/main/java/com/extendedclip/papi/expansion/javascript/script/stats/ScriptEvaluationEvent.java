@@ -0,0 +1,29 @@
+package com.extendedclip.papi.expansion.javascript.script.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every placeholder request, so script cost shows up next to GC and tick events in a
+ * flight recording.
+ */
+@Name("javascript.ScriptEvaluation")
+@Label("Script Evaluation")
+@Category({"PlaceholderAPI", "JavaScript"})
+@Description("A javascript placeholder request")
+public final class ScriptEvaluationEvent extends jdk.jfr.Event {
+    @Label("Identifier")
+    public String identifier;
+
+    @Label("Engine")
+    public String engine;
+
+    @Label("Result Length")
+    public int resultLength;
+
+    @Label("Error")
+    @Description("Whether the script failed")
+    public boolean error;
+}
@@ -0,0 +1,134 @@
+package com.extendedclip.papi.expansion.javascript.script.stats;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts and latencies of a single placeholder. Recording never locks, so it can stay enabled.
+ */
+public final class ScriptStats {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder batchedEvaluations = new LongAdder();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+    public ScriptStats() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    public void recordCall(final long nanos) {
+        calls.increment();
+        total.record(nanos);
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    public void record(@NotNull final Phase phase, final long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records a batch of evaluations run as one call. It counts as a single sample, the time of one
+     * evaluation in it is unknown.
+     */
+    public void recordBatch(final long nanos, final int evaluations) {
+        phases[Phase.BATCH_EXECUTE.ordinal()].record(nanos);
+        batchedEvaluations.add(evaluations);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return the evaluations run as part of a batch, they are left out of {@link Phase#EXECUTE}
+     */
+    public long getBatchedEvaluations() {
+        return batchedEvaluations.sum();
+    }
+
+    /**
+     * @return the latency of whole requests, including the ones answered from a cache
+     */
+    @NotNull
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    @NotNull
+    public LatencyHistogram getPhase(@NotNull final Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        timeouts.reset();
+        batchedEvaluations.reset();
+        total.reset();
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+    }
+
+    public enum Phase {
+        /**
+         * Leasing an evaluator from the engine.
+         */
+        LEASE("engine lease"),
+        /**
+         * Resolving inner placeholders in the script and its arguments.
+         */
+        PLACEHOLDERS("placeholders"),
+        /**
+         * Building the per-request bindings.
+         */
+        BINDINGS("bindings"),
+        /**
+         * Running the script, including the engine applying the bindings.
+         */
+        EXECUTE("execute"),
+        /**
+         * Running a batch of evaluations as one call, one sample per batch.
+         */
+        BATCH_EXECUTE("batch execute"),
+        /**
+         * Turning the script result into text.
+         */
+        CONVERSION("conversion"),
+        /**
+         * Resolving bracket placeholders in the result.
+         */
+        RESULT_PARSING("result parsing");
+
+        private final String name;
+
+        Phase(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+public class ArgumentParserTest {
+    private static final String[] INPUTS = {
+            "", "a", "a,b,c", "a,,b", ",a", "a,b,", "a,b,,,", ",,,", ",", "a.b|c", "a::b::::"
+    };
+
+    @Test
+    public void matchesStringSplit() {
+        assertSplitParity(",");
+    }
+
+    @Test
+    public void separatorIsMatchedLiterally() {
+        assertSplitParity(".");
+        assertSplitParity("|");
+        assertSplitParity("::");
+    }
+
+    @Test
+    public void repeatedArgumentsShareTheirResult() {
+        final ArgumentParser parser = new ArgumentParser(",");
+
+        assertSame(parser.parse("a,b"), parser.parse("a,b"));
+    }
+
+    @Test
+    public void fullCacheIsEmptiedInsteadOfGrowing() {
+        final ArgumentParser parser = new ArgumentParser(",");
+        for (int i = 0; i < 5000; i++) {
+            assertArrayEquals(new String[]{"a" + i, "b"}, parser.parse("a" + i + ",b"));
+        }
+        assertArrayEquals(new String[]{"a0", "b"}, parser.parse("a0,b"));
+    }
+
+    private static void assertSplitParity(final String separator) {
+        final ArgumentParser parser = new ArgumentParser(separator);
+        for (String input : INPUTS) {
+            assertArrayEquals("'" + input + "' split on '" + separator + "'",
+                    input.split(Pattern.quote(separator)), parser.parse(input));
+        }
+    }
+}
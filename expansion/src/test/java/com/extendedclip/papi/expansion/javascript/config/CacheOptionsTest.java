@@ -0,0 +1,33 @@
+package com.extendedclip.papi.expansion.javascript.config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CacheOptionsTest {
+
+    @Test
+    public void durationsAreParsedWithTheirUnit() {
+        assertEquals(500, CacheOptions.parseDuration("500ms"));
+        assertEquals(2000, CacheOptions.parseDuration("2s"));
+        assertEquals(1500, CacheOptions.parseDuration("1.5s"));
+        assertEquals(60_000, CacheOptions.parseDuration("1m"));
+        assertEquals(2000, CacheOptions.parseDuration(" 2S "));
+    }
+
+    @Test
+    public void plainNumbersAreSeconds() {
+        assertEquals(3000, CacheOptions.parseDuration("3"));
+        assertEquals(250, CacheOptions.parseDuration("0.25"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDurationIsRejected() {
+        CacheOptions.parseDuration("soon");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unitWithoutNumberIsRejected() {
+        CacheOptions.parseDuration("ms");
+    }
+}
@@ -0,0 +1,70 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.config.CacheOptions;
+import org.bukkit.OfflinePlayer;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResultCacheTest {
+
+    @Test
+    public void entriesExpireAfterTheirTtl() throws InterruptedException {
+        final ResultCache cache = new ResultCache(new CacheOptions(20, CacheOptions.Scope.GLOBAL, 10));
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+
+        Thread.sleep(40);
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsDropped() {
+        final ResultCache cache = new ResultCache(new CacheOptions(60_000, CacheOptions.Scope.GLOBAL, 2));
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void playerScopeKeepsPlayersApart() {
+        final ResultCache cache = new ResultCache(new CacheOptions(60_000, CacheOptions.Scope.PLAYER, 10));
+        final String[] args = {"x"};
+
+        assertNotEquals(cache.createKey(player(), args), cache.createKey(player(), args));
+    }
+
+    @Test
+    public void globalScopeIsSharedByPlayers() {
+        final ResultCache cache = new ResultCache(new CacheOptions(60_000, CacheOptions.Scope.GLOBAL, 10));
+        final String[] args = {"x"};
+
+        assertEquals(cache.createKey(player(), args), cache.createKey(player(), args));
+        assertNotEquals(cache.createKey(null, args), cache.createKey(null, new String[]{"y"}));
+    }
+
+    @Test
+    public void globalScopeFallsBackToPlayersForBracketArguments() {
+        final ResultCache cache = new ResultCache(new CacheOptions(60_000, CacheOptions.Scope.GLOBAL, 10));
+        final String[] args = {"{player_name}"};
+
+        assertNotEquals(cache.createKey(player(), args), cache.createKey(player(), args));
+    }
+
+    private static OfflinePlayer player() {
+        final OfflinePlayer player = mock(OfflinePlayer.class);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        return player;
+    }
+}
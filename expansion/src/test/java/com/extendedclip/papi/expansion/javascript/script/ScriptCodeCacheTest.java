@@ -0,0 +1,136 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.evaluator.PreparedScript;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ScriptCodeCacheTest {
+    private static final byte[] COMPILED = {1, 2, 3};
+    private static final byte[] RECOMPILED = {4, 5, 6};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("cache");
+    }
+
+    @Test
+    public void savedDataIsLoadedForTheSameScript() throws IOException {
+        final ScriptCodeCache cache = new ScriptCodeCache(directory, "v1");
+        cache.save(List.of(new CachedScript("1 + 1", null, COMPILED), new CachedScript("2 + 2", null, null)));
+        assertEquals(1, countFiles());
+
+        final CachedScript same = new CachedScript("1 + 1", null, null);
+        final CachedScript other = new CachedScript("2 + 2", null, null);
+        cache.load(List.of(same, other));
+        assertArrayEquals(COMPILED, same.loaded);
+        assertNull(other.loaded);
+    }
+
+    @Test
+    public void otherVersionsAndEntryFunctionsDoNotLoad() {
+        new ScriptCodeCache(directory, "v1").save(List.of(new CachedScript("1 + 1", null, COMPILED)));
+
+        final CachedScript otherVersion = new CachedScript("1 + 1", null, null);
+        new ScriptCodeCache(directory, "v2").load(List.of(otherVersion));
+        final CachedScript otherEntry = new CachedScript("1 + 1", "main", null);
+        new ScriptCodeCache(directory, "v1").load(List.of(otherEntry));
+
+        assertNull(otherVersion.loaded);
+        assertNull(otherEntry.loaded);
+    }
+
+    @Test
+    public void rejectedDataIsReplaced() {
+        final ScriptCodeCache cache = new ScriptCodeCache(directory, "v1");
+        cache.save(List.of(new CachedScript("1 + 1", null, COMPILED)));
+
+        // The engine rejected the loaded data and compiled the script again
+        final CachedScript rejecting = new CachedScript("1 + 1", null, null);
+        cache.load(List.of(rejecting));
+        rejecting.compiled = RECOMPILED;
+        cache.save(List.of(rejecting));
+
+        final CachedScript reloaded = new CachedScript("1 + 1", null, null);
+        cache.load(List.of(reloaded));
+        assertArrayEquals(RECOMPILED, reloaded.loaded);
+    }
+
+    @Test
+    public void retainRemovesFilesOfOtherScripts() throws IOException {
+        final ScriptCodeCache cache = new ScriptCodeCache(directory, "v1");
+        final CachedScript kept = new CachedScript("1 + 1", null, COMPILED);
+        cache.save(List.of(kept, new CachedScript("2 + 2", null, COMPILED)));
+        Files.createFile(directory.resolve("code123.tmp"));
+        Files.createFile(directory.resolve("notes.txt"));
+
+        cache.retain(List.of(kept));
+
+        assertEquals(2, countFiles());
+        final CachedScript reloaded = new CachedScript("1 + 1", null, null);
+        cache.load(List.of(reloaded));
+        assertArrayEquals(COMPILED, reloaded.loaded);
+    }
+
+    @Test
+    public void retainWithoutDirectoryDoesNothing() {
+        new ScriptCodeCache(directory, "v1").retain(List.of());
+
+        assertFalse(Files.exists(directory));
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static final class CachedScript implements PreparedScript {
+        private final String source;
+        private final String entryFunction;
+        private byte[] compiled;
+        private byte[] loaded;
+
+        private CachedScript(final String source, final String entryFunction, final byte[] compiled) {
+            this.source = source;
+            this.entryFunction = entryFunction;
+            this.compiled = compiled;
+        }
+
+        @Override
+        public String getSource() {
+            return source;
+        }
+
+        @Override
+        public String getEntryFunction() {
+            return entryFunction;
+        }
+
+        @Override
+        public byte[] getCodeCache() {
+            return compiled;
+        }
+
+        @Override
+        public void setCodeCache(final byte[] data) {
+            loaded = data;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class ScriptRegistryTest {
+    private final JavascriptPlaceholder foo = mock(JavascriptPlaceholder.class);
+    private final JavascriptPlaceholder fooBar = mock(JavascriptPlaceholder.class);
+    private final JavascriptPlaceholder other = mock(JavascriptPlaceholder.class);
+    private ScriptRegistry registry;
+
+    @Before
+    public void setUp() {
+        final Map<String, JavascriptPlaceholder> scripts = new HashMap<>();
+        scripts.put("foo", foo);
+        scripts.put("foo_bar", fooBar);
+        scripts.put("Other", other);
+        registry = new ScriptRegistry(scripts);
+    }
+
+    @Test
+    public void exactIdentifierHasNoArguments() {
+        assertMatch(foo, null, registry.match("foo"));
+        assertMatch(fooBar, null, registry.match("foo_bar"));
+    }
+
+    @Test
+    public void exactIdentifierIgnoresCase() {
+        assertMatch(foo, null, registry.match("FOO"));
+        assertMatch(other, null, registry.match("other"));
+    }
+
+    @Test
+    public void longestPrefixBeforeAnUnderscoreWins() {
+        assertMatch(fooBar, "baz", registry.match("foo_bar_baz"));
+        assertMatch(foo, "baz_qux", registry.match("foo_baz_qux"));
+        assertMatch(fooBar, "", registry.match("foo_bar_"));
+    }
+
+    @Test
+    public void ambiguousPrefixesResolveToTheLongestScript() {
+        final JavascriptPlaceholder a = mock(JavascriptPlaceholder.class);
+        final JavascriptPlaceholder ab = mock(JavascriptPlaceholder.class);
+        final JavascriptPlaceholder abc = mock(JavascriptPlaceholder.class);
+        final Map<String, JavascriptPlaceholder> scripts = new HashMap<>();
+        scripts.put("a", a);
+        scripts.put("a_b", ab);
+        scripts.put("a_b_c", abc);
+        final ScriptRegistry ambiguous = new ScriptRegistry(scripts);
+
+        assertMatch(abc, null, ambiguous.match("a_b_c"));
+        assertMatch(abc, "d", ambiguous.match("a_b_c_d"));
+        assertMatch(ab, "x", ambiguous.match("a_b_x"));
+        assertMatch(ab, "cd", ambiguous.match("a_b_cd"));
+        assertMatch(a, "x_c", ambiguous.match("a_x_c"));
+        assertMatch(a, "bc", ambiguous.match("a_bc"));
+        assertNull(ambiguous.match("ab_c"));
+    }
+
+    @Test
+    public void unknownIdentifierHasNoMatch() {
+        assertNull(registry.match("missing"));
+        assertNull(registry.match("missing_foo"));
+        assertNull(registry.match("_foo"));
+    }
+
+    private static void assertMatch(final JavascriptPlaceholder placeholder, final String arguments, final ScriptRegistry.Match match) {
+        assertSame(placeholder, match.getPlaceholder());
+        assertEquals(arguments, match.getArguments());
+    }
+}
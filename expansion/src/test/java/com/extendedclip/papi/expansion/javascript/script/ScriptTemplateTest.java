@@ -0,0 +1,58 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScriptTemplateTest {
+
+    @Test
+    public void placeholdersAreTokenizedInSourceOrder() {
+        final ScriptTemplate template = ScriptTemplate.parse("var a = '%player_name%'; var b = %player_level% + 1;");
+
+        assertEquals(Arrays.asList("player_name", "player_level"), template.getPlaceholders());
+        assertTrue(template.hasPlaceholders());
+        assertFalse(template.isConstant());
+        assertFalse(template.isBound());
+    }
+
+    @Test
+    public void placeholdersInCommentsAreLeftUntouched() {
+        final ScriptTemplate template = ScriptTemplate.parse("// %line%\n/* %block%\n %more% */ '%used%';");
+
+        assertEquals(Collections.singletonList("used"), template.getPlaceholders());
+    }
+
+    @Test
+    public void scriptWithoutPlaceholdersIsConstant() {
+        final String source = "'100' + '%'";
+        final ScriptTemplate template = ScriptTemplate.parse(source);
+
+        assertFalse(template.hasPlaceholders());
+        assertTrue(template.isConstant());
+        assertEquals(source, template.render(null));
+    }
+
+    @Test
+    public void bindingReferencesBecomeTokens() {
+        final String source = "P['player_name'] + P[\"player_level\"] + P[ 'player_name' ]; // P['commented']";
+        final ScriptTemplate template = ScriptTemplate.parseBindings(source);
+
+        assertEquals(Arrays.asList("player_name", "player_level"), template.getPlaceholders());
+        assertTrue(template.isBound());
+        assertTrue(template.isConstant());
+        assertEquals(source, template.render(null));
+    }
+
+    @Test
+    public void bindingReferencesNeedTheWholeName() {
+        final ScriptTemplate template = ScriptTemplate.parseBindings("myP['a'] + P.b + P['c']");
+
+        assertEquals(Collections.singletonList("c"), template.getPlaceholders());
+    }
+}
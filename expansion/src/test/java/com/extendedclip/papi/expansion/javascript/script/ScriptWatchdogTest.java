@@ -0,0 +1,98 @@
+package com.extendedclip.papi.expansion.javascript.script;
+
+import com.extendedclip.papi.expansion.javascript.evaluator.EvaluatorException;
+import com.extendedclip.papi.expansion.javascript.evaluator.JavetScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.evaluator.NashornScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.evaluator.QuickJsScriptEvaluatorFactory;
+import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluator;
+import com.extendedclip.papi.expansion.javascript.evaluator.ScriptEvaluatorFactory;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.script.ScriptException;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptWatchdogTest {
+    private static final long TIMEOUT_MILLIS = 100;
+
+    private final ScriptWatchdog watchdog = new ScriptWatchdog();
+    private ScriptEvaluatorFactory factory;
+
+    @After
+    public void tearDown() {
+        watchdog.shutdown();
+        if (factory != null) {
+            factory.cleanBinaries();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void quickJsLoopIsInterrupted() throws Exception {
+        factory = createOrSkip("QuickJS", () -> QuickJsScriptEvaluatorFactory.create(2));
+
+        assertInterrupted(Collections.emptyMap(), "while (true) {}");
+    }
+
+    @Test(timeout = 10000)
+    public void v8LoopIsInterrupted() throws Exception {
+        factory = createOrSkip("V8", () -> JavetScriptEvaluatorFactory.create(false, 1));
+
+        assertInterrupted(Collections.emptyMap(), "while (true) {}");
+    }
+
+    @Test(timeout = 10000)
+    public void nashornBlockingLoopIsInterrupted() throws Exception {
+        factory = createOrSkip("Nashorn", () -> NashornScriptEvaluatorFactory.create(1));
+
+        // Nashorn can only stop scripts blocked in a Java call, a busy loop runs on
+        assertInterrupted(Map.of("Latch", new CountDownLatch(1)), "while (true) { Latch.await(); }");
+    }
+
+    private void assertInterrupted(final Map<String, Object> bindings, final String script) throws Exception {
+        final ScriptEvaluator evaluator = factory.create(bindings);
+        final ScriptWatchdog.Deadline deadline = watchdog.start(evaluator, TIMEOUT_MILLIS);
+        try {
+            evaluator.execute(Collections.emptyMap(), script);
+            fail("The loop should have been interrupted");
+        } catch (EvaluatorException | ScriptException expected) {
+            assertTrue(deadline.isExpired());
+        } finally {
+            deadline.cancel();
+            close(evaluator);
+        }
+
+        // The interrupt does not reach the next evaluation on the same thread
+        final ScriptEvaluator next = factory.create(Collections.emptyMap());
+        try {
+            assertEquals(2, ((Number) next.execute(Collections.emptyMap(), "1 + 1")).intValue());
+        } finally {
+            close(next);
+        }
+    }
+
+    private static ScriptEvaluatorFactory createOrSkip(final String engine, final Callable<ScriptEvaluatorFactory> creator) {
+        try {
+            final ScriptEvaluatorFactory created = creator.call();
+            created.create(Collections.emptyMap()).execute(Collections.emptyMap(), "1");
+            return created;
+        } catch (Throwable throwable) {
+            Assume.assumeNoException(engine + " is not available on this platform", throwable);
+            return null;
+        }
+    }
+
+    private static void close(final ScriptEvaluator evaluator) throws Exception {
+        if (evaluator instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
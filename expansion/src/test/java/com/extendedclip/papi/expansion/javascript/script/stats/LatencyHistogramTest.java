@@ -0,0 +1,60 @@
+package com.extendedclip.papi.expansion.javascript.script.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void percentilesAreWithinOneEighthAbove() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * MILLI);
+        }
+
+        assertBucketed(50 * MILLI, histogram.getPercentileNanos(50));
+        assertBucketed(90 * MILLI, histogram.getPercentileNanos(90));
+        assertBucketed(99 * MILLI, histogram.getPercentileNanos(99));
+        assertEquals(100 * MILLI, histogram.getPercentileNanos(100));
+        assertEquals(100, histogram.getCount());
+    }
+
+    @Test
+    public void percentilesNeverExceedTheMax() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);
+        assertEquals(500, histogram.getPercentileNanos(50));
+
+        histogram.record(1_000_001);
+        assertEquals(1_000_001, histogram.getPercentileNanos(100));
+        assertEquals(1_000_001, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void valuesAboveTheRangeReportTheMax() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long value = TimeUnit.SECONDS.toNanos(300);
+        histogram.record(value);
+
+        assertEquals(value, histogram.getPercentileNanos(50));
+    }
+
+    private static void assertBucketed(final long expected, final long actual) {
+        assertTrue(actual + " should be at least " + expected, actual >= expected);
+        assertTrue(actual + " should be within 12.5% of " + expected, actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,21 @@
+package com.extendedclip.papi.expansion.javascript.script.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScriptStatsTest {
+    @Test
+    public void batchIsOneSampleOutsideTheExecutePhase() {
+        final ScriptStats stats = new ScriptStats();
+        stats.record(ScriptStats.Phase.EXECUTE, 1_000);
+        stats.recordBatch(50_000, 100);
+
+        assertEquals(1, stats.getPhase(ScriptStats.Phase.EXECUTE).getCount());
+        assertEquals(1, stats.getPhase(ScriptStats.Phase.BATCH_EXECUTE).getCount());
+        assertEquals(100, stats.getBatchedEvaluations());
+
+        stats.reset();
+        assertEquals(0, stats.getBatchedEvaluations());
+    }
+}